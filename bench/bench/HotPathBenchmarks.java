@@ -0,0 +1,228 @@
+package bench;
+
+import config.BasketRule;
+import config.Scenario;
+import config.SimulationConfig;
+import engine.SimulationEngine;
+import model.ProductCatalog;
+import rng.FunctionalRNG;
+import stats.Aggregator;
+import stats.InventoryManager;
+import stats.StoreInventory;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+/**
+ * Headless micro-benchmarks for the simulation hot paths, run at 2k and 200k
+ * SKUs and 1 and 64 stores. Each benchmark is warmed up, then timed over
+ * several fixed-length iterations; the report gives ops/s and the allocation
+ * rate of the benchmark thread.
+ *
+ * <pre>
+ * javac -d out $(find src bench -name '*.java')
+ * java -Xmx4g -cp out bench.HotPathBenchmarks [name-filter]
+ * </pre>
+ */
+public final class HotPathBenchmarks {
+
+    private static final int[] SKU_COUNTS = {2_000, 200_000};
+    private static final int[] STORE_COUNTS = {1, 64};
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURE_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Results are folded into this so the JIT cannot drop the measured work.
+    private static volatile long blackhole;
+
+    private HotPathBenchmarks() {}
+
+    /** One benchmark invocation; returns the number of operations it performed. */
+    private interface Batch {
+        long run();
+    }
+
+    // The batch is built lazily: at 200k SKUs an Aggregator alone is ~600 MB.
+    private record Case(String name, int skus, int stores, Supplier<Batch> batch) {}
+
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        List<Case> cases = new ArrayList<>();
+        for (int skus : SKU_COUNTS) {
+            ProductCatalog catalog = SyntheticCatalog.build(skus);
+            for (int stores : STORE_COUNTS) {
+                cases.add(new Case("rng.uniformIntInclusive", skus, stores, () -> rngBatch(skus, stores)));
+                cases.add(new Case("rng.fillUniformIntInclusive", skus, stores, () -> rngFillBatch(skus, stores)));
+                cases.add(new Case("aggregator.accept", skus, stores, () -> aggregatorBatch(catalog, stores)));
+                cases.add(new Case("inventory.sell", skus, stores, () -> inventoryBatch(catalog, stores)));
+                cases.add(new Case("engine.runDay", skus, stores, () -> engineBatch(catalog, stores)));
+                cases.add(new Case("engine.runDay+50rules", skus, stores,
+                        () -> engineBatch(catalog, stores, withExtraRules(50))));
+            }
+        }
+
+        System.out.printf("%-30s %8s %7s %16s %12s %12s%n",
+                "benchmark", "skus", "stores", "ops/s", "B/op", "alloc MB/s");
+        for (Case c : cases) {
+            if (!c.name().contains(filter)) continue;
+            measure(c);
+        }
+    }
+
+    private static void measure(Case c) {
+        Batch batch = c.batch().get();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(batch);
+        }
+        long ops = 0;
+        long nanos = 0;
+        long bytes = 0;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long[] r = iteration(batch);
+            ops += r[0];
+            nanos += r[1];
+            bytes += r[2];
+        }
+        double seconds = nanos / 1e9;
+        System.out.printf("%-30s %8d %7d %16.1f %12.2f %12.1f%n",
+                c.name(), c.skus(), c.stores(),
+                ops / seconds,
+                bytes / (double) ops,
+                bytes / seconds / (1 << 20));
+    }
+
+    private static long[] iteration(Batch batch) {
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long ops = 0;
+        long elapsed;
+        do {
+            ops += batch.run();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS);
+        long bytes = THREADS.getThreadAllocatedBytes(threadId) - bytesBefore;
+        return new long[]{ops, elapsed, bytes};
+    }
+
+    private static Batch rngBatch(int skus, int stores) {
+        FunctionalRNG rng = new FunctionalRNG(SimulationConfig.GLOBAL_SEED);
+        int[] customer = {0};
+        return () -> {
+            long acc = 0;
+            int c = ++customer[0];
+            for (int store = 1; store <= stores; store++) {
+                for (int step = 0; step < 1_000; step++) {
+                    acc += rng.uniformIntInclusive(0, skus - 1, store, c % 365, c, 90, step);
+                }
+            }
+            blackhole += acc;
+            return 1_000L * stores;
+        };
+    }
+
+    private static Batch rngFillBatch(int skus, int stores) {
+        FunctionalRNG rng = new FunctionalRNG(SimulationConfig.GLOBAL_SEED);
+        int[] out = new int[1_000];
+        int[] customer = {0};
+        return () -> {
+            long acc = 0;
+            int c = ++customer[0];
+            for (int store = 1; store <= stores; store++) {
+                long key = FunctionalRNG.ruleKey(rng.customerKey(store, c % 365, c), 90);
+                rng.fillUniformIntInclusive(0, skus - 1, key, 0, out, out.length);
+                acc += out[c % out.length];
+            }
+            blackhole += acc;
+            return 1_000L * stores;
+        };
+    }
+
+    private static Batch aggregatorBatch(ProductCatalog catalog, int stores) {
+        Aggregator aggregator = new Aggregator(catalog);
+        int[] skus = randomSkus(catalog, 1 << 16);
+        LocalDate[] dates = new LocalDate[365];
+        for (int d = 0; d < dates.length; d++) {
+            dates[d] = SimulationConfig.START_DATE.plusDays(d);
+        }
+        int[] day = {0};
+        return () -> {
+            LocalDate date = dates[day[0]++ % dates.length];
+            for (int i = 0; i < skus.length; i++) {
+                aggregator.accept(date, 1 + i % stores, i, skus[i], 1.99);
+            }
+            return skus.length;
+        };
+    }
+
+    private static Batch inventoryBatch(ProductCatalog catalog, int stores) {
+        InventoryManager inventoryManager = new InventoryManager(catalog, stores);
+        int n = catalog.columns().size();
+        int[] picks = new SplittableRandom(1).ints(1 << 16, 0, n).toArray();
+        LocalDate date = SimulationConfig.START_DATE;
+        return () -> {
+            long acc = 0;
+            for (int store = 1; store <= stores; store++) {
+                StoreInventory inventory = inventoryManager.store(store);
+                for (int i = 0; i < picks.length; i++) {
+                    acc += inventory.sellAt(picks[i]);
+                }
+                inventory.processDelivery(date);
+            }
+            blackhole += acc;
+            return (long) picks.length * stores;
+        };
+    }
+
+    private static Batch engineBatch(ProductCatalog catalog, int stores) {
+        return engineBatch(catalog, stores, Scenario.defaults());
+    }
+
+    private static Batch engineBatch(ProductCatalog catalog, int stores, Scenario scenario) {
+        SimulationEngine engine = new SimulationEngine(
+                scenario,
+                catalog,
+                new Aggregator(catalog, scenario),
+                null,
+                new InventoryManager(catalog, stores),
+                null,
+                null,
+                null
+        );
+        int[] day = {0};
+        return () -> {
+            int d = day[0]++ % 365;
+            for (int store = 1; store <= stores; store++) {
+                engine.runDay(store, d);
+            }
+            return stores;
+        };
+    }
+
+    /** The default rules plus {@code extra} weak pairings between the synthetic "Other" types. */
+    private static Scenario withExtraRules(int extra) {
+        List<BasketRule> rules = new ArrayList<>(SimulationConfig.BASKET_RULES);
+        for (int i = 0; i < extra; i++) {
+            int t = SyntheticCatalog.SPECIAL_TYPE_COUNT + i % (SyntheticCatalog.OTHER_TYPES - 1);
+            rules.add(BasketRule.paired(100 + 10L * i, "Other " + t, 0.02, "Other " + (t + 1), 0.30, 0.01));
+        }
+        return Scenario.defaults().withBasketRules(rules);
+    }
+
+    private static int[] randomSkus(ProductCatalog catalog, int count) {
+        SplittableRandom random = new SplittableRandom(7);
+        int[] skus = new int[count];
+        for (int i = 0; i < count; i++) {
+            skus[i] = catalog.columns().sku(random.nextInt(catalog.columns().size()));
+        }
+        return skus;
+    }
+}
@@ -0,0 +1,50 @@
+package bench;
+
+import config.SimulationConfig;
+import model.Product;
+import model.ProductCatalog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Builds catalogs of arbitrary size for the benchmarks. */
+final class SyntheticCatalog {
+
+    private static final String[] SPECIAL_TYPES = {
+            SimulationConfig.TYPE_MILK,
+            SimulationConfig.TYPE_CEREAL,
+            SimulationConfig.TYPE_BABY_FOOD,
+            SimulationConfig.TYPE_DIAPERS,
+            SimulationConfig.TYPE_BREAD,
+            SimulationConfig.TYPE_PEANUT_BUTTER,
+            SimulationConfig.TYPE_JELLY_JAM
+    };
+    static final int SPECIAL_TYPE_COUNT = SPECIAL_TYPES.length;
+    static final int OTHER_TYPES = 60;
+
+    private SyntheticCatalog() {}
+
+    /**
+     * {@code skuCount} products spread round-robin over the seven special
+     * types and {@value #OTHER_TYPES} other types, priced 0.50 to 10.49.
+     */
+    static ProductCatalog build(int skuCount) {
+        Map<Integer, Product> productsBySku = new HashMap<>(skuCount * 2);
+        Map<String, List<Integer>> skusByType = new HashMap<>();
+        List<Integer> allSkus = new ArrayList<>(skuCount);
+
+        int typeCount = SPECIAL_TYPES.length + OTHER_TYPES;
+        for (int i = 0; i < skuCount; i++) {
+            int t = i % typeCount;
+            String type = t < SPECIAL_TYPES.length ? SPECIAL_TYPES[t] : "Other " + t;
+            int sku = 10_000_000 + i;
+            double price = 0.50 + (i % 1000) / 100.0;
+            productsBySku.put(sku, new Product(sku, "Product " + i, "Maker " + (i % 97), "1 ea", type, price));
+            skusByType.computeIfAbsent(type, k -> new ArrayList<>()).add(sku);
+            allSkus.add(sku);
+        }
+        return new ProductCatalog(productsBySku, skusByType, allSkus);
+    }
+}
@@ -1,43 +1,211 @@
+import config.Scenario;
 import config.SimulationConfig;
 import engine.SimulationEngine;
 import io.ProductLoader;
+import metrics.RunMetrics;
 import model.ProductCatalog;
 import stats.*;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 public class Main {
+    /**
+     * Usage: {@code Main [scenario.properties] [--workers N | --resume]}. Without
+     * a file the SimulationConfig defaults are used; with workers the stores are
+     * split across that many worker JVMs (see {@link ShardCoordinator}); with
+     * --resume the run continues from SimulationConfig.CHECKPOINT_PATH.
+     */
     public static void main(String[] args) throws Exception {
+        Path scenarioFile = null;
+        int workers = SimulationConfig.SHARD_WORKERS;
+        boolean resume = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--workers")) {
+                workers = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--resume")) {
+                resume = true;
+            } else {
+                scenarioFile = Path.of(args[i]);
+            }
+        }
+        if (resume && workers > 0) {
+            System.err.println("--resume needs a single-process run; worker JVMs do not checkpoint");
+            System.exit(2);
+        }
+        Scenario scenario = scenarioFile != null ? Scenario.load(scenarioFile) : Scenario.defaults();
         Path productsPath = SimulationConfig.PRODUCTS_FILE_PATH;
         ProductCatalog catalog = ProductLoader.load(productsPath);
-        Aggregator aggregator = new Aggregator(catalog);
+        if (workers > 0) {
+            ShardCoordinator.run(scenario, scenarioFile, catalog, workers,
+                    SimulationConfig.D3_OUTPUT_DIR, Path.of("Hw4"));
+        } else {
+            run(scenario, catalog, SimulationConfig.D3_OUTPUT_DIR, Path.of("Hw4"), true, resume);
+        }
+    }
+
+    /**
+     * Simulates one scenario and writes its reports: the Dataset files into
+     * {@code datasetDir} and inventory.json into {@code inventoryDir}. The
+     * SQLite database and transaction logs have fixed paths in SimulationConfig,
+     * so only a {@code standalone} run writes them (and prints the summary).
+     */
+    static Aggregator run(
+            Scenario scenario,
+            ProductCatalog catalog,
+            Path datasetDir,
+            Path inventoryDir,
+            boolean standalone
+    ) throws Exception {
+        return run(scenario, catalog, datasetDir, inventoryDir, standalone, false);
+    }
+
+    /**
+     * Like the other run, checkpointing a standalone run when
+     * CHECKPOINT_ENABLED is on or it resumes. Rows already sent to SQLite or
+     * the transaction logs cannot be taken back, so those cannot resume. A
+     * standalone run with METRICS_ENABLED also prints its progress and writes
+     * metrics.json next to the reports.
+     */
+    static Aggregator run(
+            Scenario scenario,
+            ProductCatalog catalog,
+            Path datasetDir,
+            Path inventoryDir,
+            boolean standalone,
+            boolean resume
+    ) throws Exception {
+        if (resume && (SimulationConfig.DATABASE_ENABLED || SimulationConfig.TRANSACTION_LOG_ENABLED
+                || SimulationConfig.SANITY_CHECK_SQLITE_ENABLED)) {
+            throw new IllegalStateException("A run with SQLite outputs or transaction logs cannot be resumed");
+        }
+        Files.createDirectories(datasetDir);
+        Files.createDirectories(inventoryDir);
+        Aggregator aggregator = new Aggregator(catalog, scenario);
         CustomerSummaryCollector summaryCollector = null;
-        InventoryManager inventoryManager = new InventoryManager(catalog);
+        InventoryManager inventoryManager = new InventoryManager(catalog, scenario.storeCount());
         if (SimulationConfig.SANITY_CHECK_ENABLED) {
-            summaryCollector = new CustomerSummaryCollector();
+            ToSQLite.BulkLoader database = standalone && SimulationConfig.SANITY_CHECK_SQLITE_ENABLED
+                    ? ToSQLite.open(SimulationConfig.SANITY_CHECK_DB_PATH)
+                    : null;
+            summaryCollector = new CustomerSummaryCollector(
+                    datasetDir.resolve(SimulationConfig.SANITY_CHECK_OUTPUT_PATH.getFileName()),
+                    database,
+                    scenario
+            );
         }
+        SQLiteSink database = standalone && SimulationConfig.DATABASE_ENABLED
+                ? new SQLiteSink(SimulationConfig.DATABASE_PATH, catalog,
+                        scenario, SimulationConfig.DATABASE_QUEUE_DAYS, SimulationConfig.DATABASE_INVENTORY_DAYS)
+                : null;
+        StoreTopKReport topKReport = SimulationConfig.STORE_TOP_K_ENABLED
+                ? new StoreTopKReport(catalog, scenario)
+                : null;
+        CheckpointLog checkpoint = standalone && (SimulationConfig.CHECKPOINT_ENABLED || resume)
+                ? new CheckpointLog(SimulationConfig.CHECKPOINT_PATH, scenario, catalog, resume)
+                : null;
+        RunMetrics metrics = standalone && SimulationConfig.METRICS_ENABLED
+                ? new RunMetrics(scenario)
+                : null;
         SimulationEngine engine = new SimulationEngine(
+                scenario,
                 catalog,
                 aggregator,
                 summaryCollector,
-                inventoryManager
+                inventoryManager,
+                database,
+                topKReport,
+                standalone && SimulationConfig.TRANSACTION_LOG_ENABLED ? SimulationConfig.TRANSACTION_LOG_DIR : null,
+                checkpoint,
+                metrics
         );
-        engine.run();
-        aggregator.printSummary();
+        if (metrics != null) {
+            metrics.startProgress(SimulationConfig.METRICS_PROGRESS_SECONDS);
+        }
+        boolean simulated = false;
+        try {
+            engine.run();
+            simulated = true;
+        } finally {
+            if (metrics != null) {
+                metrics.endSimulation();
+            }
+            // Keep the days finished before a failure.
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+            if (database != null) {
+                if (simulated) {
+                    database.close();
+                } else {
+                    database.abort();
+                }
+            }
+        }
+        if (standalone) {
+            aggregator.printSummary();
+        }
         if (SimulationConfig.SANITY_CHECK_ENABLED && summaryCollector != null) {
-            summaryCollector.export(SimulationConfig.SANITY_CHECK_OUTPUT_PATH);
+            CustomerSummaryCollector collector = summaryCollector;
+            export(metrics, "customer_summary.csv", collector::close);
         }
 
+        writeReports(catalog, aggregator, inventoryManager, topKReport, datasetDir, inventoryDir, metrics);
+        if (metrics != null) {
+            metrics.writeJson(datasetDir.resolve(SimulationConfig.METRICS_OUTPUT_PATH.getFileName()));
+        }
+        return aggregator;
+    }
+
+    static void writeReports(
+            ProductCatalog catalog,
+            Aggregator aggregator,
+            InventoryManager inventoryManager,
+            StoreTopKReport topKReport,
+            Path datasetDir,
+            Path inventoryDir
+    ) throws Exception {
+        writeReports(catalog, aggregator, inventoryManager, topKReport, datasetDir, inventoryDir, null);
+    }
+
+    /** Writes the reports of a finished run, timing each into {@code metrics}; both may be null. */
+    static void writeReports(
+            ProductCatalog catalog,
+            Aggregator aggregator,
+            InventoryManager inventoryManager,
+            StoreTopKReport topKReport,
+            Path datasetDir,
+            Path inventoryDir,
+            RunMetrics metrics
+    ) throws Exception {
+        export(metrics, "inventory.json",
+                () -> inventoryManager.experJson(inventoryDir.resolve("inventory.json")));
         if (SimulationConfig.EXPORT_D3_JSON) {
-            aggregator.exportD3Json(SimulationConfig.D3_OUTPUT_DIR);
+            export(metrics, "summary.json+top10.json", () -> aggregator.exportD3Json(datasetDir));
         }
-        Top10DailyExporter.export(
+        export(metrics, "top10_daily.json", () -> Top10DailyExporter.export(
                 aggregator,
                 catalog,
-                Path.of("Dataset", "top10_daily.json")
-        );
-        aggregator.exportHw3Full(
-                Path.of("Dataset", "hw3_comparsion.csv")
-        );
+                datasetDir.resolve("top10_daily.json")
+        ));
+        export(metrics, "hw3_comparsion.csv", () -> aggregator.exportHw3Full(
+                datasetDir.resolve("hw3_comparsion.csv")
+        ));
+        if (topKReport != null) {
+            export(metrics, "store_topk.csv", () -> topKReport.export(datasetDir.resolve("store_topk.csv")));
+        }
+        if (SimulationConfig.EXPORT_WINDOW_REPORT) {
+            export(metrics, "windows.csv", () -> aggregator.exportWindowReport(
+                    datasetDir.resolve("windows.csv"),
+                    SimulationConfig.WINDOW_REPORT_DAYS
+            ));
+        }
+    }
 
+    private static void export(RunMetrics metrics, String name, RunMetrics.Export export) throws Exception {
+        if (metrics != null) {
+            metrics.timeExport(name, export);
+        } else {
+            export.run();
+        }
     }
 }
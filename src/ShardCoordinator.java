@@ -0,0 +1,202 @@
+import config.Scenario;
+import config.SimulationConfig;
+import model.ProductCatalog;
+import stats.Aggregator;
+import stats.CustomerSummaryCollector;
+import stats.InventoryManager;
+import stats.StoreTopKReport;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a run's stores into consecutive ranges, one per {@link ShardWorker}
+ * JVM on this host, and merges the partial state the workers send back over a
+ * loopback socket. Draws are keyed by store, day and customer, so the merged
+ * reports are the same as a single-process run's. The workers are forked with
+ * this JVM's java binary, class path and heap options; with
+ * {@link SimulationConfig#SHARD_FORK_WORKERS} off the commands are printed so
+ * the workers can be started by hand.
+ * <p>
+ * The SQLite outputs are single-writer, so they are left off in this mode.
+ */
+final class ShardCoordinator {
+
+    private ShardCoordinator() {}
+
+    static Aggregator run(
+            Scenario scenario,
+            Path scenarioFile,
+            ProductCatalog catalog,
+            int workers,
+            Path datasetDir,
+            Path inventoryDir
+    ) throws Exception {
+        Files.createDirectories(datasetDir);
+        Files.createDirectories(inventoryDir);
+        int[][] ranges = ranges(scenario.storeCount(), workers);
+        Path summaryPath = SimulationConfig.SANITY_CHECK_ENABLED
+                ? datasetDir.resolve(SimulationConfig.SANITY_CHECK_OUTPUT_PATH.getFileName())
+                : null;
+        List<Path> summaryParts = new ArrayList<>();
+
+        Aggregator aggregator = new Aggregator(catalog, scenario);
+        InventoryManager inventoryManager = new InventoryManager(catalog, scenario.storeCount());
+        StoreTopKReport topKReport = SimulationConfig.STORE_TOP_K_ENABLED
+                ? new StoreTopKReport(catalog, scenario)
+                : null;
+
+        List<Process> processes = new ArrayList<>();
+        try (ServerSocket server = new ServerSocket(0, ranges.length, InetAddress.getLoopbackAddress())) {
+            for (int[] range : ranges) {
+                Path part = null;
+                if (summaryPath != null) {
+                    part = summaryPath.resolveSibling(
+                            summaryPath.getFileName() + ".stores-" + range[0] + "-" + range[1]);
+                    summaryParts.add(part);
+                }
+                List<String> command = workerCommand(server.getLocalPort(), range, part, scenarioFile);
+                if (SimulationConfig.SHARD_FORK_WORKERS) {
+                    processes.add(new ProcessBuilder(command).inheritIO().start());
+                } else {
+                    System.out.println("Start: " + String.join(" ", command));
+                }
+            }
+            System.out.println("Waiting for " + ranges.length + " workers on port " + server.getLocalPort());
+
+            boolean[] received = new boolean[ranges.length];
+            server.setSoTimeout(1000);
+            for (int done = 0; done < ranges.length; ) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    checkAlive(processes);
+                    continue;
+                }
+                try (socket; DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(socket.getInputStream(), 1 << 16))) {
+                    int shard = receive(in, ranges, aggregator, inventoryManager, topKReport);
+                    if (received[shard]) {
+                        throw new IOException("Stores " + ranges[shard][0] + ".." + ranges[shard][1] + " sent twice");
+                    }
+                    received[shard] = true;
+                    done++;
+                }
+            }
+            for (Process p : processes) {
+                if (p.waitFor() != 0) {
+                    throw new IOException("Worker " + p.pid() + " exited with " + p.exitValue());
+                }
+            }
+        } finally {
+            for (Process p : processes) {
+                p.destroy();
+            }
+        }
+
+        if (summaryPath != null) {
+            CustomerSummaryCollector.mergeParts(summaryParts, summaryPath);
+            for (Path part : summaryParts) {
+                Files.delete(part);
+            }
+        }
+        aggregator.printSummary();
+        Main.writeReports(catalog, aggregator, inventoryManager, topKReport, datasetDir, inventoryDir);
+        return aggregator;
+    }
+
+    /** Consecutive store ranges as {first, last}, sized within one store of each other. */
+    static int[][] ranges(int storeCount, int workers) {
+        int n = Math.max(1, Math.min(workers, storeCount));
+        int[][] ranges = new int[n][];
+        int first = 1;
+        for (int i = 0; i < n; i++) {
+            int size = storeCount / n + (i < storeCount % n ? 1 : 0);
+            ranges[i] = new int[]{first, first + size - 1};
+            first += size;
+        }
+        return ranges;
+    }
+
+    private static List<String> workerCommand(int port, int[] range, Path summaryPart, Path scenarioFile) {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+        // Heap and system-property options only; debug or agent options would clash.
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (arg.startsWith("-Xm") || arg.startsWith("-Xss") || arg.startsWith("-XX:") || arg.startsWith("-D")) {
+                command.add(arg);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        command.add("--connect");
+        command.add(Integer.toString(port));
+        command.add("--stores");
+        command.add(range[0] + "-" + range[1]);
+        if (summaryPart != null) {
+            command.add("--summary");
+            command.add(summaryPart.toString());
+        }
+        if (scenarioFile != null) {
+            command.add(scenarioFile.toString());
+        }
+        return command;
+    }
+
+    private static void checkAlive(List<Process> processes) throws IOException {
+        for (Process p : processes) {
+            if (!p.isAlive() && p.exitValue() != 0) {
+                throw new IOException("Worker " + p.pid() + " exited with " + p.exitValue());
+            }
+        }
+    }
+
+    /** Merges one worker's partial state; returns the index of its range. */
+    private static int receive(
+            DataInputStream in,
+            int[][] ranges,
+            Aggregator aggregator,
+            InventoryManager inventoryManager,
+            StoreTopKReport topKReport
+    ) throws IOException {
+        if (in.readInt() != ShardWorker.MAGIC) {
+            throw new IOException("Not a shard worker");
+        }
+        int first = in.readInt();
+        int last = in.readInt();
+        int shard = -1;
+        for (int i = 0; i < ranges.length; i++) {
+            if (ranges[i][0] == first && ranges[i][1] == last) shard = i;
+        }
+        if (shard < 0) {
+            throw new IOException("Unexpected store range " + first + ".." + last);
+        }
+        aggregator.mergeFrom(in);
+        int[] stores = inventoryManager.readStores(in);
+        if (stores[0] != first || stores[1] != last) {
+            throw new IOException("Inventory of stores " + stores[0] + ".." + stores[1]
+                    + " sent for range " + first + ".." + last);
+        }
+        boolean hasTopK = in.readBoolean();
+        if (hasTopK != (topKReport != null)) {
+            throw new IOException("Worker and coordinator disagree on STORE_TOP_K_ENABLED");
+        }
+        if (topKReport != null) {
+            topKReport.readStores(in);
+        }
+        return shard;
+    }
+}
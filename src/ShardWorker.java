@@ -0,0 +1,95 @@
+import config.Scenario;
+import config.SimulationConfig;
+import engine.SimulationEngine;
+import io.ProductLoader;
+import model.ProductCatalog;
+import stats.Aggregator;
+import stats.CustomerSummaryCollector;
+import stats.InventoryManager;
+import stats.StoreTopKReport;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+
+/**
+ * Simulates one range of stores for a {@link ShardCoordinator} and sends its
+ * partial state back over a loopback socket: the header (magic, first and last
+ * store), the aggregator counters, the range's inventory partitions and, when
+ * enabled, its top-K periods. The customer summary rows of the range go to
+ * their own file, which the coordinator merges.
+ * <p>
+ * Usage: {@code ShardWorker --connect PORT --stores FIRST-LAST [--summary PATH] [scenario.properties]}
+ */
+public final class ShardWorker {
+
+    static final int MAGIC = 0x53484431; // "SHD1"
+
+    private ShardWorker() {}
+
+    public static void main(String[] args) throws Exception {
+        int port = -1;
+        int firstStore = -1;
+        int lastStore = -1;
+        Path summaryPath = null;
+        Path scenarioFile = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--connect" -> port = Integer.parseInt(args[++i]);
+                case "--stores" -> {
+                    String[] range = args[++i].split("-");
+                    firstStore = Integer.parseInt(range[0]);
+                    lastStore = Integer.parseInt(range[range.length - 1]);
+                }
+                case "--summary" -> summaryPath = Path.of(args[++i]);
+                default -> scenarioFile = Path.of(args[i]);
+            }
+        }
+        if (port < 0 || firstStore < 0) {
+            System.err.println("Usage: ShardWorker --connect PORT --stores FIRST-LAST [--summary PATH] [scenario.properties]");
+            System.exit(2);
+        }
+
+        Scenario scenario = scenarioFile != null ? Scenario.load(scenarioFile) : Scenario.defaults();
+        ProductCatalog catalog = ProductLoader.load(SimulationConfig.PRODUCTS_FILE_PATH);
+        Aggregator aggregator = new Aggregator(catalog, scenario);
+        InventoryManager inventoryManager = new InventoryManager(catalog, scenario.storeCount());
+        StoreTopKReport topKReport = SimulationConfig.STORE_TOP_K_ENABLED
+                ? new StoreTopKReport(catalog, scenario)
+                : null;
+        CustomerSummaryCollector summaryCollector = summaryPath != null
+                ? new CustomerSummaryCollector(summaryPath, null, firstStore, lastStore,
+                        scenario.startDate(), scenario.dayCount())
+                : null;
+        SimulationEngine engine = new SimulationEngine(
+                scenario,
+                catalog,
+                aggregator,
+                summaryCollector,
+                inventoryManager,
+                null,
+                topKReport,
+                SimulationConfig.TRANSACTION_LOG_ENABLED ? SimulationConfig.TRANSACTION_LOG_DIR : null
+        );
+        engine.run(firstStore, lastStore);
+        if (summaryCollector != null) {
+            summaryCollector.close();
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(socket.getOutputStream(), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(firstStore);
+            out.writeInt(lastStore);
+            aggregator.writeTo(out);
+            inventoryManager.writeStores(out, firstStore, lastStore);
+            out.writeBoolean(topKReport != null);
+            if (topKReport != null) {
+                topKReport.writeStores(out, firstStore, lastStore);
+            }
+        }
+    }
+}
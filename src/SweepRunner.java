@@ -0,0 +1,161 @@
+import config.Scenario;
+import config.SimulationConfig;
+import io.ProductLoader;
+import model.ProductCatalog;
+
+import java.io.BufferedWriter;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many scenarios in one JVM against one shared catalog. The sweep file
+ * uses the {@link Scenario} keys; a comma-separated value is swept, and every
+ * combination of swept values becomes one scenario:
+ * <pre>
+ * storeCount=4,8,16
+ * priceMultiplier=1.0,1.2
+ * endDate=2025-03-31
+ * </pre>
+ * Each scenario has its own engine and aggregator and writes its reports into
+ * {@code <outputDir>/<name>/}, named after its swept values; {@code sweep.csv}
+ * lists them all. Scenarios run on a fixed pool (one per processor by default)
+ * and simulate their stores sequentially unless the file sets parallelStores.
+ * <p>
+ * Usage: {@code SweepRunner sweep.properties [outputDir] [--threads N]}
+ */
+public class SweepRunner {
+
+    private record Result(Scenario scenario, Path dir, double seconds, Exception error) {}
+
+    public static void main(String[] args) throws Exception {
+        Path sweepFile = null;
+        Path outputDir = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (sweepFile == null) {
+                sweepFile = Path.of(args[i]);
+            } else {
+                outputDir = Path.of(args[i]);
+            }
+        }
+        if (sweepFile == null) {
+            System.err.println("Usage: SweepRunner sweep.properties [outputDir] [--threads N]");
+            System.exit(2);
+        }
+        String stem = sweepFile.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        if (outputDir == null) {
+            outputDir = SimulationConfig.D3_OUTPUT_DIR.resolve("sweeps").resolve(stem);
+        }
+
+        List<Scenario> scenarios = expand(sweepFile, stem);
+        ProductCatalog catalog = ProductLoader.load(SimulationConfig.PRODUCTS_FILE_PATH);
+        System.out.println("Running " + scenarios.size() + " scenarios on "
+                + Math.min(threads, scenarios.size()) + " threads into " + outputDir);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, scenarios.size())));
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            Path dir = outputDir.resolve(scenario.name());
+            futures.add(pool.submit(() -> runOne(scenario, catalog, dir)));
+        }
+        pool.shutdown();
+
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> f : futures) {
+            results.add(f.get());
+        }
+        writeIndex(outputDir.resolve("sweep.csv"), results);
+
+        long failed = results.stream().filter(r -> r.error() != null).count();
+        if (failed > 0) {
+            System.err.println(failed + " of " + results.size() + " scenarios failed");
+            System.exit(1);
+        }
+    }
+
+    private static Result runOne(Scenario scenario, ProductCatalog catalog, Path dir) {
+        long start = System.nanoTime();
+        try {
+            Main.run(scenario, catalog, dir, dir, false);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s done in %.1fs%n", scenario.name(), seconds);
+            return new Result(scenario, dir, seconds, null);
+        } catch (Exception e) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.println(scenario.name() + " failed: " + e);
+            return new Result(scenario, dir, seconds, e);
+        }
+    }
+
+    /** One scenario per combination of the comma-separated values, in file key order. */
+    static List<Scenario> expand(Path sweepFile, String stem) throws Exception {
+        Properties props = new Properties();
+        try (Reader r = Files.newBufferedReader(sweepFile)) {
+            props.load(r);
+        }
+        String baseName = props.getProperty("name", stem).trim();
+        props.remove("name");
+        if (!props.containsKey("parallelStores")) {
+            // The sweep already uses the processors; one pool per scenario would oversubscribe them.
+            props.setProperty("parallelStores", "false");
+        }
+
+        SortedMap<String, String[]> values = new TreeMap<>();
+        for (String key : props.stringPropertyNames()) {
+            String[] parts = props.getProperty(key).split(",");
+            for (int i = 0; i < parts.length; i++) parts[i] = parts[i].trim();
+            values.put(key, parts);
+        }
+
+        List<Scenario> scenarios = new ArrayList<>();
+        List<String> keys = new ArrayList<>(values.keySet());
+        int[] choice = new int[keys.size()];
+        Scenario base = Scenario.defaults();
+        while (true) {
+            Properties combination = new Properties();
+            StringBuilder name = new StringBuilder(baseName);
+            for (int k = 0; k < keys.size(); k++) {
+                String[] options = values.get(keys.get(k));
+                combination.setProperty(keys.get(k), options[choice[k]]);
+                if (options.length > 1) {
+                    name.append('_').append(keys.get(k)).append('=').append(options[choice[k]]);
+                }
+            }
+            combination.setProperty("name", name.toString());
+            scenarios.add(base.with(combination));
+
+            int k = keys.size() - 1;
+            while (k >= 0 && ++choice[k] == values.get(keys.get(k)).length) {
+                choice[k--] = 0;
+            }
+            if (k < 0) break;
+        }
+        return scenarios;
+    }
+
+    private static void writeIndex(Path path, List<Result> results) throws Exception {
+        Files.createDirectories(path.getParent());
+        try (BufferedWriter w = Files.newBufferedWriter(path)) {
+            w.write("name,dir,storeCount,startDate,endDate,priceMultiplier,seed,seconds,status\n");
+            for (Result r : results) {
+                Scenario s = r.scenario();
+                w.write(s.name() + ","
+                        + r.dir() + ","
+                        + s.storeCount() + ","
+                        + s.startDate() + ","
+                        + s.endDateInclusive() + ","
+                        + s.priceMultiplier() + ","
+                        + s.seed() + ","
+                        + String.format("%.2f", r.seconds()) + ","
+                        + (r.error() == null ? "ok" : "failed") + "\n");
+            }
+        }
+    }
+}
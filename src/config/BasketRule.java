@@ -0,0 +1,87 @@
+package config;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One purchase affinity. A customer buys a {@code primaryType} item with
+ * {@code probability}; then a {@code companionType} item with
+ * {@code companionWithPrimary} if they bought the primary, or
+ * {@code companionWithoutPrimary} if they did not. Single-item rules have no
+ * companion.
+ * <p>
+ * {@code ruleId} keys the rule's random draws: ruleId for the primary decision
+ * and ruleId + 1 for its pick, ruleId + 2 and ruleId + 3 for the companion
+ * decision with and without the primary, and ruleId + 4 for the companion pick.
+ */
+public record BasketRule(
+        long ruleId,
+        String primaryType,
+        double probability,
+        String companionType,
+        double companionWithPrimary,
+        double companionWithoutPrimary
+) {
+
+    /** Draw ids one rule occupies, starting at its ruleId. */
+    public static final int IDS_PER_RULE = 5;
+
+    public BasketRule {
+        if (primaryType == null) {
+            throw new IllegalArgumentException("Rule " + ruleId + " has no primary type");
+        }
+        checkProbability(ruleId, probability);
+        checkProbability(ruleId, companionWithPrimary);
+        checkProbability(ruleId, companionWithoutPrimary);
+        if (companionType == null && (companionWithPrimary != 0.0 || companionWithoutPrimary != 0.0)) {
+            throw new IllegalArgumentException("Rule " + ruleId + " has companion probabilities but no companion");
+        }
+    }
+
+    private static void checkProbability(long ruleId, double p) {
+        if (!(p >= 0.0 && p <= 1.0)) {
+            throw new IllegalArgumentException("Rule " + ruleId + " probability out of [0, 1]: " + p);
+        }
+    }
+
+    public static BasketRule single(long ruleId, String type, double probability) {
+        return new BasketRule(ruleId, type, probability, null, 0.0, 0.0);
+    }
+
+    public static BasketRule paired(
+            long ruleId,
+            String primaryType,
+            double probability,
+            String companionType,
+            double companionWithPrimary,
+            double companionWithoutPrimary
+    ) {
+        return new BasketRule(ruleId, primaryType, probability,
+                companionType, companionWithPrimary, companionWithoutPrimary);
+    }
+
+    public boolean hasCompanion() {
+        return companionType != null;
+    }
+
+    /** Marginal probability that a customer buys the companion. */
+    public double companionProbability() {
+        return probability * companionWithPrimary + (1 - probability) * companionWithoutPrimary;
+    }
+
+    /**
+     * Expected items of each type per customer under the rules, in rule order.
+     * Like the report it feeds, it ignores baskets cut short by their size.
+     */
+    public static Map<String, Double> expectedPerCustomer(List<BasketRule> rules) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (BasketRule rule : rules) {
+            result.merge(rule.primaryType(), rule.probability(), Double::sum);
+            if (rule.hasCompanion()) {
+                result.merge(rule.companionType(), rule.companionProbability(), Double::sum);
+            }
+        }
+        return result;
+    }
+}
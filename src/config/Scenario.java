@@ -0,0 +1,149 @@
+package config;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Simulation parameters of one run. {@link #defaults()} mirrors the constants
+ * in {@link SimulationConfig}; a properties file overrides any subset of them
+ * by key, so what-if runs need no recompilation:
+ * <pre>
+ * name=bigger-stores
+ * storeCount=16
+ * priceMultiplier=1.2
+ * startDate=2025-01-01
+ * endDate=2025-06-30
+ * </pre>
+ * Keys: name, storeCount, parallelStores, startDate, endDate,
+ * weekdayCustomersLow, weekdayCustomersHigh, weekendCustomerIncrease,
+ * itemsPerCustomerLow, itemsPerCustomerHigh, priceMultiplier, seed.
+ * The basket rules are not a key; they default to
+ * {@link SimulationConfig#BASKET_RULES} and are replaced with
+ * {@link #withBasketRules}.
+ */
+public record Scenario(
+        String name,
+        int storeCount,
+        boolean parallelStores,
+        LocalDate startDate,
+        LocalDate endDateInclusive,
+        int weekdayCustomersLow,
+        int weekdayCustomersHigh,
+        int weekendCustomerIncrease,
+        int itemsPerCustomerLow,
+        int itemsPerCustomerHigh,
+        double priceMultiplier,
+        long seed,
+        List<BasketRule> basketRules
+) {
+
+    public static final Set<String> KEYS = Set.of(
+            "name", "storeCount", "parallelStores", "startDate", "endDate",
+            "weekdayCustomersLow", "weekdayCustomersHigh", "weekendCustomerIncrease",
+            "itemsPerCustomerLow", "itemsPerCustomerHigh", "priceMultiplier", "seed"
+    );
+
+    public Scenario {
+        if (storeCount <= 0) {
+            throw new IllegalArgumentException("storeCount must be positive: " + storeCount);
+        }
+        if (endDateInclusive.isBefore(startDate)) {
+            throw new IllegalArgumentException("endDate " + endDateInclusive + " is before startDate " + startDate);
+        }
+        if (weekdayCustomersLow < 0 || weekdayCustomersHigh < weekdayCustomersLow || weekendCustomerIncrease < 0) {
+            throw new IllegalArgumentException("Bad customer range: " + weekdayCustomersLow + ".."
+                    + weekdayCustomersHigh + " +" + weekendCustomerIncrease);
+        }
+        if (itemsPerCustomerLow < 0 || itemsPerCustomerHigh < itemsPerCustomerLow) {
+            throw new IllegalArgumentException("Bad items range: " + itemsPerCustomerLow + ".." + itemsPerCustomerHigh);
+        }
+        basketRules = List.copyOf(basketRules);
+    }
+
+    public static Scenario defaults() {
+        return new Scenario(
+                "default",
+                SimulationConfig.STORE_COUNT,
+                SimulationConfig.PARALLEL_STORES,
+                SimulationConfig.START_DATE,
+                SimulationConfig.END_DATE_INCLUSIVE,
+                SimulationConfig.WEEKDAY_CUSTOMERS_LOW_INCLUSIVE,
+                SimulationConfig.WEEKDAY_CUSTOMERS_HIGH_INCLUSIVE,
+                SimulationConfig.WEEKEND_CUSTOMER_INCREASE,
+                SimulationConfig.ITEMS_PER_CUSTOMER_LOW_INCLUSIVE,
+                SimulationConfig.ITEMS_PER_CUSTOMER_HIGH_INCLUSIVE,
+                SimulationConfig.PRICE_MULTIPLIER,
+                SimulationConfig.GLOBAL_SEED,
+                SimulationConfig.BASKET_RULES
+        );
+    }
+
+    /** Defaults overridden by the properties file; the name defaults to the file name. */
+    public static Scenario load(Path path) throws IOException {
+        Properties props = new Properties();
+        try (Reader r = Files.newBufferedReader(path)) {
+            props.load(r);
+        }
+        if (!props.containsKey("name")) {
+            String file = path.getFileName().toString();
+            int dot = file.lastIndexOf('.');
+            props.setProperty("name", dot > 0 ? file.substring(0, dot) : file);
+        }
+        return defaults().with(props);
+    }
+
+    /** This scenario with the given keys overridden; unknown keys are rejected. */
+    public Scenario with(Properties props) {
+        for (String key : props.stringPropertyNames()) {
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown scenario key: " + key);
+            }
+        }
+        try {
+            return new Scenario(
+                    props.getProperty("name", name).trim(),
+                    intOf(props, "storeCount", storeCount),
+                    Boolean.parseBoolean(props.getProperty("parallelStores", Boolean.toString(parallelStores)).trim()),
+                    LocalDate.parse(props.getProperty("startDate", startDate.toString()).trim()),
+                    LocalDate.parse(props.getProperty("endDate", endDateInclusive.toString()).trim()),
+                    intOf(props, "weekdayCustomersLow", weekdayCustomersLow),
+                    intOf(props, "weekdayCustomersHigh", weekdayCustomersHigh),
+                    intOf(props, "weekendCustomerIncrease", weekendCustomerIncrease),
+                    intOf(props, "itemsPerCustomerLow", itemsPerCustomerLow),
+                    intOf(props, "itemsPerCustomerHigh", itemsPerCustomerHigh),
+                    Double.parseDouble(props.getProperty("priceMultiplier", Double.toString(priceMultiplier)).trim()),
+                    Long.parseLong(props.getProperty("seed", Long.toString(seed)).trim()),
+                    basketRules
+            );
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Bad scenario " + props + ": " + e.getMessage(), e);
+        }
+    }
+
+    public Scenario withBasketRules(List<BasketRule> rules) {
+        return new Scenario(name, storeCount, parallelStores, startDate, endDateInclusive,
+                weekdayCustomersLow, weekdayCustomersHigh, weekendCustomerIncrease,
+                itemsPerCustomerLow, itemsPerCustomerHigh, priceMultiplier, seed, rules);
+    }
+
+    private static int intOf(Properties props, String key, int fallback) {
+        String value = props.getProperty(key);
+        return value == null ? fallback : Integer.parseInt(value.trim());
+    }
+
+    public int dayCount() {
+        return (int) ChronoUnit.DAYS.between(startDate, endDateInclusive) + 1;
+    }
+
+    /** Largest number of customers any store can see in a day. */
+    public int maxCustomersPerDay() {
+        return weekdayCustomersHigh + weekendCustomerIncrease;
+    }
+}
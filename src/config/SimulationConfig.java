@@ -3,11 +3,18 @@ package config;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.util.List;
 
 public final class SimulationConfig {
     private SimulationConfig() {}
 
     public static final int STORE_COUNT = 8;
+    public static final boolean PARALLEL_STORES = true;
+    // Worker JVMs the stores are split across (Main --workers N overrides it);
+    // 0 simulates every store in this process. With SHARD_FORK_WORKERS off the
+    // coordinator waits for workers started by hand instead of forking them.
+    public static final int SHARD_WORKERS = 0;
+    public static final boolean SHARD_FORK_WORKERS = true;
 
     public static final LocalDate START_DATE = LocalDate.of(2025, 1, 1);
     public static final LocalDate END_DATE_INCLUSIVE = LocalDate.of(2025, 12, 31);
@@ -24,14 +31,70 @@ public final class SimulationConfig {
     public static final long GLOBAL_SEED = 8L;
 
     public static final Path PRODUCTS_FILE_PATH = Paths.get("Dataset", "Products1.txt");
+    // Reuse Products1.txt.snapshot while the products file is unchanged.
+    public static final boolean CATALOG_SNAPSHOT_ENABLED = true;
 
     public static final boolean EXPORT_D3_JSON = true;
+    // Length of the top lists in top10.json, top10_daily.json and the summary.
+    public static final int TOP_K = 10;
+    // Extra copies of top10_daily.json: gzip, and a little-endian Int32 sidecar.
+    public static final boolean TOP_DAILY_GZIP = false;
+    public static final boolean TOP_DAILY_BINARY = false;
+
+    // Weekly top-50 per store in Dataset/store_topk.csv. The approximate mode
+    // tracks STORE_TOP_K_CAPACITY counters (Space-Saving) instead of every SKU.
+    public static final boolean STORE_TOP_K_ENABLED = true;
+    public static final int STORE_TOP_K = 50;
+    public static final int STORE_TOP_K_PERIOD_DAYS = 7;
+    public static final boolean STORE_TOP_K_APPROXIMATE = false;
+    public static final int STORE_TOP_K_CAPACITY = 1000;
     public static final Path D3_OUTPUT_DIR = Paths.get("Dataset");
 
+    // Leading and rolling windows of these lengths go to Dataset/windows.csv.
+    public static final boolean EXPORT_WINDOW_REPORT = true;
+    public static final int[] WINDOW_REPORT_DAYS = {7, 14, 30, 180};
+
+    public static final boolean TRANSACTION_LOG_ENABLED = false;
+    public static final boolean TRANSACTION_LOG_BINARY = true;
+    public static final Path TRANSACTION_LOG_DIR = Paths.get("Dataset", "transactions");
+
     public static final boolean SANITY_CHECK_ENABLED = true;
 
     public static final Path SANITY_CHECK_OUTPUT_PATH =
             Paths.get("Dataset", "customer_summary.csv");
+    // Finished dates waiting for the customer summary's writer thread.
+    public static final int SANITY_CHECK_QUEUE_DAYS = 16;
+
+    // Loads the customer summary straight into SQLite (needs sqlite-jdbc in lib/).
+    public static final boolean SANITY_CHECK_SQLITE_ENABLED = false;
+    public static final Path SANITY_CHECK_DB_PATH = Paths.get("Dataset", "sanity_check.db");
+    public static final int SQLITE_COMMIT_ROWS = 100_000;
+    public static final String SQLITE_JOURNAL_MODE = "OFF";
+    public static final String SQLITE_SYNCHRONOUS = "OFF";
+
+    // Daily counts and inventory levels per store, written by a background thread.
+    public static final boolean DATABASE_ENABLED = false;
+    public static final Path DATABASE_PATH = Paths.get("Dataset", "simulation.db");
+    public static final int DATABASE_QUEUE_DAYS = 64;
+    // Inventory levels are written every this many days (and on the last day).
+    public static final int DATABASE_INVENTORY_DAYS = 7;
+
+    // Every store appends its progress to CHECKPOINT_PATH every
+    // CHECKPOINT_INTERVAL_DAYS days (a multiple of STORE_TOP_K_PERIOD_DAYS), and
+    // Main --resume continues from it. The writer thread falls at most
+    // CHECKPOINT_QUEUE_INTERVALS checkpoints behind.
+    public static final boolean CHECKPOINT_ENABLED = false;
+    public static final Path CHECKPOINT_PATH = Paths.get("Dataset", "checkpoint.bin");
+    public static final int CHECKPOINT_INTERVAL_DAYS = 28;
+    public static final int CHECKPOINT_QUEUE_INTERVALS = 16;
+
+    // Hot-path counters of a standalone run: a progress line every
+    // METRICS_PROGRESS_SECONDS (0 for none) and Dataset/metrics.json at the
+    // end. The simulation.StoreDay and simulation.Export JFR events are
+    // recorded whenever a JFR recording is running.
+    public static final boolean METRICS_ENABLED = true;
+    public static final int METRICS_PROGRESS_SECONDS = 5;
+    public static final Path METRICS_OUTPUT_PATH = Paths.get("Dataset", "metrics.json");
 
     public static final String TYPE_MILK = "Milk";
     public static final String TYPE_CEREAL = "Cereal";
@@ -41,4 +104,13 @@ public final class SimulationConfig {
     public static final String TYPE_PEANUT_BUTTER = "Peanut Butter";
     public static final String TYPE_JELLY_JAM = "Jelly/Jam";
 
+    // Basket affinities, applied to every customer in this order. Rule ids
+    // 1, 2 and 90 are taken by the customer count, basket size and random fill.
+    public static final List<BasketRule> BASKET_RULES = List.of(
+            BasketRule.paired(10, TYPE_MILK, 0.70, TYPE_CEREAL, 0.50, 0.05),
+            BasketRule.paired(20, TYPE_BABY_FOOD, 0.20, TYPE_DIAPERS, 0.80, 0.01),
+            BasketRule.single(30, TYPE_BREAD, 0.50),
+            BasketRule.paired(40, TYPE_PEANUT_BUTTER, 0.10, TYPE_JELLY_JAM, 0.90, 0.05)
+    );
+
 }
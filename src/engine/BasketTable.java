@@ -0,0 +1,134 @@
+package engine;
+
+import config.BasketRule;
+import model.ProductColumns;
+import rng.FunctionalRNG;
+import stats.CustomerSummaryCollector;
+
+import java.util.List;
+
+/**
+ * {@link BasketRule}s compiled against a catalog into parallel arrays indexed
+ * by rule position: type ordinals instead of names, integer thresholds instead
+ * of probabilities, and the per-rule part of every random draw's hash
+ * precomputed. The engine walks it with plain array reads.
+ * <p>
+ * Every decision is a step-0 draw of its own key, so it does not depend on
+ * what the customer bought before. The decisions of up to 64 rules are
+ * therefore drawn in two tight loops into bit masks ({@link #primaryMask},
+ * {@link #companionMask}), and the engine only visits the rules whose bits are
+ * set. Drawing a decision that a full basket makes moot changes nothing.
+ */
+final class BasketTable {
+
+    private static final long[] RESERVED_IDS = {
+            SimulationEngine.RuleId.CUSTOMERS_FOR_DAY,
+            SimulationEngine.RuleId.ITEM_COUNT,
+            SimulationEngine.RuleId.RANDOM_PICK
+    };
+
+    final int size;
+    // Type ordinals; -1 when the catalog has no such type.
+    final int[] primaryType;
+    final int[] companionType;
+    // CustomerSummaryCollector flags, 0 for types it does not track.
+    final int[] primaryFlag;
+    final int[] companionFlag;
+    // FunctionalRNG.threshold53 of each probability.
+    final long[] primaryThreshold;
+    final long[] withPrimaryThreshold;
+    final long[] withoutPrimaryThreshold;
+    // FunctionalRNG.firstDrawSalt of the decisions, ruleSalt of the picks.
+    final long[] primarySalt;
+    final long[] primaryPickSalt;
+    final long[] withPrimarySalt;
+    final long[] withoutPrimarySalt;
+    final long[] companionPickSalt;
+
+    private BasketTable(int size) {
+        this.size = size;
+        this.primaryType = new int[size];
+        this.companionType = new int[size];
+        this.primaryFlag = new int[size];
+        this.companionFlag = new int[size];
+        this.primaryThreshold = new long[size];
+        this.withPrimaryThreshold = new long[size];
+        this.withoutPrimaryThreshold = new long[size];
+        this.primarySalt = new long[size];
+        this.primaryPickSalt = new long[size];
+        this.withPrimarySalt = new long[size];
+        this.withoutPrimarySalt = new long[size];
+        this.companionPickSalt = new long[size];
+    }
+
+    static BasketTable compile(List<BasketRule> rules, ProductColumns columns) {
+        checkIds(rules);
+        BasketTable t = new BasketTable(rules.size());
+        for (int r = 0; r < rules.size(); r++) {
+            BasketRule rule = rules.get(r);
+            long id = rule.ruleId();
+            t.primaryType[r] = columns.typeOrdinalOf(rule.primaryType());
+            t.primaryFlag[r] = CustomerSummaryCollector.flagOf(rule.primaryType());
+            t.primaryThreshold[r] = FunctionalRNG.threshold53(rule.probability());
+            t.primarySalt[r] = FunctionalRNG.firstDrawSalt(id);
+            t.primaryPickSalt[r] = FunctionalRNG.ruleSalt(id + 1);
+            if (rule.hasCompanion()) {
+                t.companionType[r] = columns.typeOrdinalOf(rule.companionType());
+                t.companionFlag[r] = CustomerSummaryCollector.flagOf(rule.companionType());
+                t.withPrimaryThreshold[r] = FunctionalRNG.threshold53(rule.companionWithPrimary());
+                t.withoutPrimaryThreshold[r] = FunctionalRNG.threshold53(rule.companionWithoutPrimary());
+                t.withPrimarySalt[r] = FunctionalRNG.firstDrawSalt(id + 2);
+                t.withoutPrimarySalt[r] = FunctionalRNG.firstDrawSalt(id + 3);
+                t.companionPickSalt[r] = FunctionalRNG.ruleSalt(id + 4);
+            } else {
+                // Zero thresholds: the companion bit is never set.
+                t.companionType[r] = -1;
+            }
+        }
+        return t;
+    }
+
+    /** Bit {@code r - from} set when the customer buys rule r's primary, for r in [from, to), to - from <= 64. */
+    long primaryMask(long customerKey, int from, int to) {
+        long mask = 0L;
+        for (int r = from; r < to; r++) {
+            if (FunctionalRNG.bernoulliFirst(primaryThreshold[r], customerKey, primarySalt[r])) {
+                mask |= 1L << (r - from);
+            }
+        }
+        return mask;
+    }
+
+    /** Like {@link #primaryMask} for the companions, given the primary decisions of the same rules. */
+    long companionMask(long customerKey, int from, int to, long primaryMask) {
+        long mask = 0L;
+        for (int r = from; r < to; r++) {
+            boolean withPrimary = (primaryMask >>> (r - from) & 1L) != 0;
+            long threshold = withPrimary ? withPrimaryThreshold[r] : withoutPrimaryThreshold[r];
+            long salt = withPrimary ? withPrimarySalt[r] : withoutPrimarySalt[r];
+            if (FunctionalRNG.bernoulliFirst(threshold, customerKey, salt)) {
+                mask |= 1L << (r - from);
+            }
+        }
+        return mask;
+    }
+
+    /** Rejects rules whose draw ids overlap each other or the reserved ones. */
+    private static void checkIds(List<BasketRule> rules) {
+        for (int i = 0; i < rules.size(); i++) {
+            long from = rules.get(i).ruleId();
+            long to = from + BasketRule.IDS_PER_RULE - 1;
+            for (long reserved : RESERVED_IDS) {
+                if (reserved >= from && reserved <= to) {
+                    throw new IllegalArgumentException("Rule " + from + " overlaps reserved draw id " + reserved);
+                }
+            }
+            for (int j = 0; j < i; j++) {
+                long other = rules.get(j).ruleId();
+                if (Math.abs(other - from) < BasketRule.IDS_PER_RULE) {
+                    throw new IllegalArgumentException("Rules " + other + " and " + from + " overlap");
+                }
+            }
+        }
+    }
+}
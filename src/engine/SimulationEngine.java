@@ -1,31 +1,72 @@
 package engine;
 
+import config.Scenario;
 import config.SimulationConfig;
-import model.Product;
+import io.BinaryTransactionLog;
+import io.CsvTransactionLog;
+import io.TransactionSink;
+import metrics.RunMetrics;
+import metrics.StoreMetrics;
 import model.ProductCatalog;
+import model.ProductColumns;
 import rng.FunctionalRNG;
 import stats.Aggregator;
-import stats.CustomerSummary;
+import stats.CheckpointLog;
 import stats.CustomerSummaryCollector;
 import stats.InventoryManager;
-
+import stats.SQLiteSink;
+import stats.StoreInventory;
+import stats.StoreTopKReport;
+import stats.TopKTracker;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.stream.IntStream;
 
 public final class SimulationEngine {
 
+    private final Scenario scenario;
     private final ProductCatalog catalog;
     private final Aggregator aggregator;
+    // The run's aggregator that a store engine adds each finished day into;
+    // null on the top-level engine and on runDay's.
+    private final Aggregator runAggregator;
     private final FunctionalRNG rng;
     private final CustomerSummaryCollector summaryCollector;
 
-    private final Map<String, List<Integer>> skusByType;
-    private final List<Integer> allSkus;
+    private final ProductColumns columns;
+    private final double[] salePrices;
+    private final int[] salePriceCents;
+    private final BasketTable basket;
     private InventoryManager inventoryManager;
+    // Partition of the store this engine simulates; null on the top-level engine.
+    private final StoreInventory inventory;
+    // Directory of the per-store transaction logs, or null when they are off.
+    private final Path transactionLogDir;
+    // Per-store transaction log, or null when transactionLogDir is.
+    private final TransactionSink transactionLog;
+    // Receives every finished store-day, or null when DATABASE_ENABLED is off.
+    private final SQLiteSink database;
+    // Per-period top-K of this store, or null when STORE_TOP_K_ENABLED is off.
+    private final StoreTopKReport topKReport;
+    private final TopKTracker topK;
+    // Appends the stores' progress every few days, or null when checkpoints are off.
+    private final CheckpointLog checkpoint;
+    // Customer flags of the days since this store's last checkpoint, or null
+    // without a checkpoint log or customer summary.
+    private final byte[][] checkpointFlags;
+    // Totals of the run's stores, or null when metrics are off; each store
+    // engine counts into its own StoreMetrics.
+    private final RunMetrics runMetrics;
+    private final StoreMetrics metrics;
+    // Random picks of the current customer; each store engine has its own.
+    private final int[] pickBuffer;
+    // CustomerSummaryCollector flags of the current customer.
+    private int customerFlags;
 
     public SimulationEngine(
             ProductCatalog catalog,
@@ -33,80 +74,291 @@ public final class SimulationEngine {
             CustomerSummaryCollector summaryCollector,
             InventoryManager inventoryManager
     ) {
+        this(catalog, aggregator, summaryCollector, inventoryManager, null, null);
+    }
+
+    public SimulationEngine(
+            ProductCatalog catalog,
+            Aggregator aggregator,
+            CustomerSummaryCollector summaryCollector,
+            InventoryManager inventoryManager,
+            SQLiteSink database,
+            StoreTopKReport topKReport
+    ) {
+        this(
+                Scenario.defaults(),
+                catalog,
+                aggregator,
+                summaryCollector,
+                inventoryManager,
+                database,
+                topKReport,
+                SimulationConfig.TRANSACTION_LOG_ENABLED ? SimulationConfig.TRANSACTION_LOG_DIR : null
+        );
+    }
+
+    public SimulationEngine(
+            Scenario scenario,
+            ProductCatalog catalog,
+            Aggregator aggregator,
+            CustomerSummaryCollector summaryCollector,
+            InventoryManager inventoryManager,
+            SQLiteSink database,
+            StoreTopKReport topKReport,
+            Path transactionLogDir
+    ) {
+        this(scenario, catalog, aggregator, summaryCollector, inventoryManager,
+                database, topKReport, transactionLogDir, null, null);
+    }
+
+    /**
+     * Engine for one scenario. The catalog is only read, so concurrent engines
+     * of different scenarios can share it; everything else is per engine.
+     * Stores with records in {@code checkpoint} continue after their last one;
+     * {@code runMetrics}, when given, receives every store's counters.
+     */
+    public SimulationEngine(
+            Scenario scenario,
+            ProductCatalog catalog,
+            Aggregator aggregator,
+            CustomerSummaryCollector summaryCollector,
+            InventoryManager inventoryManager,
+            SQLiteSink database,
+            StoreTopKReport topKReport,
+            Path transactionLogDir,
+            CheckpointLog checkpoint,
+            RunMetrics runMetrics
+    ) {
+        if (checkpoint != null && topKReport != null
+                && checkpoint.intervalDays() % topKReport.periodDays() != 0) {
+            throw new IllegalArgumentException("Checkpoint interval of " + checkpoint.intervalDays()
+                    + " days is not a whole number of " + topKReport.periodDays() + "-day top-K periods");
+        }
+        this.scenario = scenario;
         this.catalog = catalog;
         this.aggregator = aggregator;
+        this.runAggregator = null;
         this.summaryCollector = summaryCollector;
-        this.rng = new FunctionalRNG(SimulationConfig.GLOBAL_SEED);
-        this.skusByType = catalog.skusByType();
-        this.allSkus = catalog.allSkus();
+        this.rng = new FunctionalRNG(scenario.seed());
+        this.columns = catalog.columns();
+        this.salePrices = new double[columns.size()];
+        this.salePriceCents = new int[columns.size()];
+        for (int i = 0; i < salePrices.length; i++) {
+            salePrices[i] = round2(columns.basePrice(i) * scenario.priceMultiplier());
+            salePriceCents[i] = (int) Math.round(salePrices[i] * 100.0);
+        }
+        this.basket = BasketTable.compile(scenario.basketRules(), columns);
         this.inventoryManager = inventoryManager;
+        this.inventory = null;
+        this.transactionLogDir = transactionLogDir;
+        this.transactionLog = null;
+        this.database = database;
+        this.topKReport = topKReport;
+        this.topK = null;
+        this.checkpoint = checkpoint;
+        this.checkpointFlags = null;
+        this.runMetrics = runMetrics;
+        this.metrics = null;
+        this.pickBuffer = new int[scenario.itemsPerCustomerHigh()];
     }
 
-    public void run() {
-        int dayIndex;
-
-        for (int storeId = 1; storeId <= SimulationConfig.STORE_COUNT; storeId++) {
-            dayIndex = 0;
-
-            for (LocalDate date = SimulationConfig.START_DATE;
-                 !date.isAfter(SimulationConfig.END_DATE_INCLUSIVE);
-                 date = date.plusDays(1), dayIndex++) {
-
-                inventoryManager.processDelivery(date);
+    private SimulationEngine(
+            SimulationEngine parent,
+            int storeId,
+            Aggregator aggregator,
+            Aggregator runAggregator,
+            CustomerSummaryCollector summaryCollector,
+            TransactionSink transactionLog,
+            SQLiteSink database,
+            StoreTopKReport topKReport,
+            CheckpointLog checkpoint
+    ) {
+        this.scenario = parent.scenario;
+        this.catalog = parent.catalog;
+        this.aggregator = aggregator;
+        this.runAggregator = runAggregator;
+        this.summaryCollector = summaryCollector;
+        this.rng = parent.rng;
+        this.columns = parent.columns;
+        this.salePrices = parent.salePrices;
+        this.salePriceCents = parent.salePriceCents;
+        this.basket = parent.basket;
+        this.inventoryManager = parent.inventoryManager;
+        this.inventory = parent.inventoryManager.store(storeId);
+        this.transactionLogDir = parent.transactionLogDir;
+        this.transactionLog = transactionLog;
+        this.database = database;
+        this.topKReport = topKReport;
+        this.topK = topKReport != null ? topKReport.newTracker() : null;
+        this.checkpoint = checkpoint;
+        this.checkpointFlags = checkpoint != null && summaryCollector != null
+                ? new byte[checkpoint.intervalDays()][]
+                : null;
+        this.runMetrics = parent.runMetrics;
+        this.metrics = runMetrics != null ? runMetrics.newStore(storeId) : new StoreMetrics(null, storeId);
+        this.pickBuffer = new int[scenario.itemsPerCustomerHigh()];
+    }
 
-                int customersToday = customersForDay(storeId, date, dayIndex);
-                aggregator.addCustomers(date, customersToday);
+    public void run() {
+        run(1, scenario.storeCount());
+    }
 
-                for (int customerId = 1; customerId <= customersToday; customerId++) {
+    /**
+     * Simulates stores firstStore..lastStore only. Every draw is keyed by its
+     * store, day and customer, so a store's results do not depend on which
+     * other stores run, here or in another process.
+     */
+    public void run(int firstStore, int lastStore) {
+        if (firstStore < 1 || lastStore > scenario.storeCount() || firstStore > lastStore) {
+            throw new IllegalArgumentException("Bad store range " + firstStore + ".." + lastStore
+                    + " of " + scenario.storeCount() + " stores");
+        }
+        IntStream stores = IntStream.rangeClosed(firstStore, lastStore);
+        if (scenario.parallelStores()) {
+            stores = stores.parallel();
+        }
+        // Store days are added into the aggregator as they finish and its
+        // counters are integer sums, so the parallel run produces exactly the
+        // same aggregates as the sequential one. Metrics are merged in order.
+        stores.mapToObj(this::runStore).forEachOrdered(this::mergeStore);
+    }
 
-                    CustomerSummary cs = null;
-                    if (summaryCollector != null) {
-                        cs = new CustomerSummary(date, storeId, customerId);
-                        String key = date + "-" + storeId + "-" + customerId;
-                        summaryCollector.mark(key, cs);
-                    }
-                    int targetItems = rng.uniformIntInclusive(
-                            SimulationConfig.ITEMS_PER_CUSTOMER_LOW_INCLUSIVE,
-                            SimulationConfig.ITEMS_PER_CUSTOMER_HIGH_INCLUSIVE,
-                            storeId, dayIndex, customerId,
-                            RuleId.ITEM_COUNT, 0
-                    );
-                    int itemsAdded = 0;
-                    itemsAdded = applyMilkCereal(storeId, date, dayIndex, customerId, targetItems, itemsAdded, cs);
-                    if (itemsAdded >= targetItems) continue;
+    private SimulationEngine runStore(int storeId) {
+        try (TransactionSink log = openTransactionLog(storeId)) {
+            SimulationEngine store = new SimulationEngine(
+                    this,
+                    storeId,
+                    Aggregator.storePartial(catalog, scenario,
+                            checkpoint != null ? checkpoint.intervalDays() : 1),
+                    aggregator,
+                    summaryCollector,
+                    log,
+                    database,
+                    topKReport,
+                    checkpoint
+            );
+            store.simulateStore(storeId);
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-                    itemsAdded = applyBabyFoodDiapers(storeId, date, dayIndex, customerId, targetItems, itemsAdded, cs);
-                    if (itemsAdded >= targetItems) continue;
+    private TransactionSink openTransactionLog(int storeId) throws IOException {
+        if (transactionLogDir == null) return null;
+        Path dir = transactionLogDir;
+        Files.createDirectories(dir);
+        String name = String.format("transactions-store-%02d", storeId);
+        if (SimulationConfig.TRANSACTION_LOG_BINARY) {
+            return new BinaryTransactionLog(dir.resolve(name + ".bin"), scenario.startDate());
+        }
+        return new CsvTransactionLog(dir.resolve(name + ".csv"), scenario.startDate());
+    }
 
-                    itemsAdded = applyBread(storeId, date, dayIndex, customerId, targetItems, itemsAdded, cs);
-                    if (itemsAdded >= targetItems) continue;
+    private void mergeStore(SimulationEngine store) {
+        if (runMetrics != null) {
+            runMetrics.merge(store.metrics);
+        }
+    }
 
-                    itemsAdded = applyPeanutButterJam(storeId, date, dayIndex, customerId, targetItems, itemsAdded, cs);
-                    if (itemsAdded >= targetItems) continue;
+    private void simulateStore(int storeId) throws IOException {
+        int dayIndex = checkpoint != null
+                ? checkpoint.restore(storeId, runAggregator, inventory, topKReport, summaryCollector)
+                : 0;
+        if (dayIndex > 0) {
+            metrics.restored(dayIndex);
+        }
+        int checkpointFrom = dayIndex;
+
+        for (LocalDate date = scenario.startDate().plusDays(dayIndex);
+             !date.isAfter(scenario.endDateInclusive());
+             date = date.plusDays(1), dayIndex++) {
+            simulateDay(storeId, date, dayIndex);
+            if (checkpoint != null && checkpoint.due(dayIndex)) {
+                checkpoint.record(storeId, checkpointFrom, dayIndex + 1,
+                        aggregator, inventory, topKReport, checkpointFlags);
+                checkpointFrom = dayIndex + 1;
+            }
+            runAggregator.addDay(aggregator, dayIndex);
+        }
+    }
 
-                    fillRandomItems(storeId, date, dayIndex, customerId, targetItems, itemsAdded);
+    /**
+     * Simulates one store-day straight into this engine's aggregator, with no
+     * summary collector, transaction log, database, top-K report or checkpoint. Meant for benchmarks; run() is the
+     * entry point for a full simulation.
+     */
+    public void runDay(int storeId, int dayIndex) {
+        new SimulationEngine(this, storeId, aggregator, null, null, null, null, null, null)
+                .simulateDay(storeId, scenario.startDate().plusDays(dayIndex), dayIndex);
+    }
 
+    private void simulateDay(int storeId, LocalDate date, int dayIndex) {
+        metrics.beginDay();
+        inventory.processDelivery(date);
+        metrics.endDelivery();
+        aggregator.startDay(dayIndex);
+        long itemsBefore = aggregator.totalItems();
+
+        int customersToday = customersForDay(storeId, date, dayIndex);
+        aggregator.addCustomers(date, customersToday);
+        if (transactionLog != null) {
+            transactionLog.beginDay(storeId, dayIndex, customersToday);
+        }
+        if (summaryCollector != null) {
+            summaryCollector.beginDay(storeId, dayIndex, customersToday);
+        }
 
-                }
+        for (int customerId = 1; customerId <= customersToday; customerId++) {
+            customerFlags = 0;
+            simulateCustomer(storeId, dayIndex, customerId);
+            if (summaryCollector != null) {
+                summaryCollector.record(storeId, dayIndex, customerId, customerFlags);
             }
         }
-        try {
-            inventoryManager.experJson(Path.of("Hw4/inventory.json"));
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        if (summaryCollector != null) {
+            if (checkpointFlags != null) {
+                // Intervals start on multiples of their length.
+                checkpointFlags[dayIndex % checkpointFlags.length] = summaryCollector.dayFlags(storeId, dayIndex);
+            }
+            try {
+                summaryCollector.endDay(storeId, dayIndex);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (database != null) {
+            database.storeDay(storeId, dayIndex, aggregator, inventory);
+        }
+        if (topK != null && topKReport.endsPeriod(dayIndex, date.equals(scenario.endDateInclusive()))) {
+            topKReport.record(storeId, dayIndex, topK);
         }
+        metrics.endDay(dayIndex, customersToday, aggregator.totalItems() - itemsBefore);
+    }
+
+    private void simulateCustomer(int storeId, int dayIndex, int customerId) {
+        long customerKey = rng.customerKey(storeId, dayIndex, customerId);
+        int targetItems = rng.uniformIntInclusive(
+                scenario.itemsPerCustomerLow(),
+                scenario.itemsPerCustomerHigh(),
+                FunctionalRNG.ruleKey(customerKey, RuleId.ITEM_COUNT), 0
+        );
+        int itemsAdded = applyRules(storeId, dayIndex, customerId, customerKey, targetItems);
+        if (itemsAdded >= targetItems) return;
+
+        fillRandomItems(storeId, dayIndex, customerId, customerKey, targetItems, itemsAdded);
     }
 
     private int customersForDay(int storeId, LocalDate date, int dayIndex) {
         int base = rng.uniformIntInclusive(
-                SimulationConfig.WEEKDAY_CUSTOMERS_LOW_INCLUSIVE,
-                SimulationConfig.WEEKDAY_CUSTOMERS_HIGH_INCLUSIVE,
+                scenario.weekdayCustomersLow(),
+                scenario.weekdayCustomersHigh(),
                 storeId, dayIndex, 0,
                 RuleId.CUSTOMERS_FOR_DAY, 0
         );
 
         if (isWeekend(date)) {
-            base += SimulationConfig.WEEKEND_CUSTOMER_INCREASE;
+            base += scenario.weekendCustomerIncrease();
         }
         return base;
     }
@@ -116,227 +368,117 @@ public final class SimulationEngine {
         return d == DayOfWeek.SATURDAY || d == DayOfWeek.SUNDAY;
     }
 
-    private int applyMilkCereal(
-            int storeId, LocalDate date, int dayIndex, int customerId,
-            int target, int itemsAdded, CustomerSummary cs
-    ) {
-        boolean buysMilk = rng.bernoulli(0.70, storeId, dayIndex, customerId, RuleId.MILK, 0);
-
-        if (buysMilk) {
-            if (cs != null) cs.boughtMilk = true;
-
-            itemsAdded = buyOneByType(
-                    SimulationConfig.TYPE_MILK,
-                    storeId, date, dayIndex, customerId,
-                    RuleId.MILK_PICK, itemsAdded
-            );
-            if (itemsAdded >= target) return itemsAdded;
-
-            boolean buysCereal = rng.bernoulli(0.50, storeId, dayIndex, customerId, RuleId.CEREAL_GIVEN_MILK, 0);
-            if (buysCereal) {
-                if (cs != null) cs.boughtCereal = true;
-                itemsAdded = buyOneByType(
-                        SimulationConfig.TYPE_CEREAL,
-                        storeId, date, dayIndex, customerId,
-                        RuleId.CEREAL_PICK, itemsAdded
-                );
-            }
-        } else {
-            boolean buysCereal = rng.bernoulli(0.05, storeId, dayIndex, customerId, RuleId.CEREAL_WITHOUT_MILK, 0);
-            if (buysCereal) {
-                if (cs != null) cs.boughtCereal = true;
-                itemsAdded = buyOneByType(
-                        SimulationConfig.TYPE_CEREAL,
-                        storeId, date, dayIndex, customerId,
-                        RuleId.CEREAL_PICK, itemsAdded
-                );
-            }
-        }
-        return itemsAdded;
-    }
-
-    private int applyBabyFoodDiapers(
-            int storeId, LocalDate date, int dayIndex, int customerId,
-            int target, int itemsAdded, CustomerSummary cs
-    ) {
-        boolean buysBaby = rng.bernoulli(0.20, storeId, dayIndex, customerId, RuleId.BABY_FOOD, 0);
-
-        if (buysBaby) {
-            if (cs != null) cs.boughtBabyFood = true;
-
-            itemsAdded = buyOneByType(
-                    SimulationConfig.TYPE_BABY_FOOD,
-                    storeId, date, dayIndex, customerId,
-                    RuleId.BABY_PICK, itemsAdded
-            );
-            if (itemsAdded >= target) return itemsAdded;
-
-            boolean buysDiapers = rng.bernoulli(0.80, storeId, dayIndex, customerId, RuleId.DIAPERS_GIVEN_BABY, 0);
-            if (buysDiapers) {
-                if (cs != null) cs.boughtDiapers = true;
-                itemsAdded = buyOneByType(
-                        SimulationConfig.TYPE_DIAPERS,
-                        storeId, date, dayIndex, customerId,
-                        RuleId.DIAPERS_PICK, itemsAdded
-                );
-            }
-        } else {
-            boolean buysDiapers = rng.bernoulli(0.01, storeId, dayIndex, customerId, RuleId.DIAPERS_WITHOUT_BABY, 0);
-            if (buysDiapers) {
-                if (cs != null) cs.boughtDiapers = true;
-                itemsAdded = buyOneByType(
-                        SimulationConfig.TYPE_DIAPERS,
-                        storeId, date, dayIndex, customerId,
-                        RuleId.DIAPERS_PICK, itemsAdded
-                );
-            }
-        }
-        return itemsAdded;
-    }
-
-    private int applyBread(
-            int storeId, LocalDate date, int dayIndex, int customerId,
-            int target, int itemsAdded, CustomerSummary cs
+    /**
+     * Applies the basket rules in order, stopping after the first rule that
+     * fills the basket; within a rule, a basket filled by the primary skips the
+     * companion. Rules bought nothing from are skipped via the decision masks.
+     */
+    private int applyRules(
+            int storeId, int dayIndex, int customerId, long customerKey,
+            int target
     ) {
-        boolean buysBread = rng.bernoulli(0.50, storeId, dayIndex, customerId, RuleId.BREAD, 0);
-        if (buysBread) {
-            if (cs != null) cs.boughtBread = true;
-            itemsAdded = buyOneByType(
-                    SimulationConfig.TYPE_BREAD,
-                    storeId, date, dayIndex, customerId,
-                    RuleId.BREAD_PICK, itemsAdded
-            );
-        }
-        return itemsAdded;
-    }
-
-    private int applyPeanutButterJam(
-            int storeId, LocalDate date, int dayIndex, int customerId,
-            int target, int itemsAdded, CustomerSummary cs
-    ) {
-        boolean buysPb = rng.bernoulli(0.10, storeId, dayIndex, customerId, RuleId.PEANUT_BUTTER, 0);
-
-        if (buysPb) {
-            if (cs != null) cs.boughtPB = true;
-
-            itemsAdded = buyOneByType(
-                    SimulationConfig.TYPE_PEANUT_BUTTER,
-                    storeId, date, dayIndex, customerId,
-                    RuleId.PB_PICK, itemsAdded
-            );
-            if (itemsAdded >= target) return itemsAdded;
-
-            boolean buysJam = rng.bernoulli(0.90, storeId, dayIndex, customerId, RuleId.JAM_GIVEN_PB, 0);
-            if (buysJam) {
-                if (cs != null) cs.boughtJam = true;
-                itemsAdded = buyOneByType(
-                        SimulationConfig.TYPE_JELLY_JAM,
-                        storeId, date, dayIndex, customerId,
-                        RuleId.JAM_PICK, itemsAdded
-                );
-            }
-        } else {
-            boolean buysJam = rng.bernoulli(0.05, storeId, dayIndex, customerId, RuleId.JAM_WITHOUT_PB, 0);
-            if (buysJam) {
-                if (cs != null) cs.boughtJam = true;
-                itemsAdded = buyOneByType(
-                        SimulationConfig.TYPE_JELLY_JAM,
-                        storeId, date, dayIndex, customerId,
-                        RuleId.JAM_PICK, itemsAdded
-                );
+        BasketTable t = basket;
+        int itemsAdded = 0;
+        for (int from = 0; from < t.size; from += Long.SIZE) {
+            int to = Math.min(t.size, from + Long.SIZE);
+            long primary = t.primaryMask(customerKey, from, to);
+            long companion = t.companionMask(customerKey, from, to, primary);
+            for (long pending = primary | companion; pending != 0; pending &= pending - 1) {
+                int bit = Long.numberOfTrailingZeros(pending);
+                int r = from + bit;
+                // The first rule always runs; later ones only while the basket has room.
+                if (r > 0 && itemsAdded >= target) return itemsAdded;
+
+                if ((primary >>> bit & 1L) != 0) {
+                    customerFlags |= t.primaryFlag[r];
+                    itemsAdded = buyOneByType(
+                            t.primaryType[r],
+                            storeId, dayIndex, customerId,
+                            customerKey ^ t.primaryPickSalt[r], itemsAdded
+                    );
+                    if (itemsAdded >= target) continue;
+                }
+                if ((companion >>> bit & 1L) != 0) {
+                    customerFlags |= t.companionFlag[r];
+                    itemsAdded = buyOneByType(
+                            t.companionType[r],
+                            storeId, dayIndex, customerId,
+                            customerKey ^ t.companionPickSalt[r], itemsAdded
+                    );
+                }
             }
         }
         return itemsAdded;
     }
 
     private void fillRandomItems(
-            int storeId, LocalDate date, int dayIndex, int customerId,
+            int storeId, int dayIndex, int customerId, long customerKey,
             int target, int itemsAdded
     ) {
-        for (int k = itemsAdded; k < target; k++) {
-            int idx = rng.uniformIntInclusive(
-                    0, allSkus.size() - 1,
-                    storeId, dayIndex, customerId,
-                    RuleId.RANDOM_PICK, k
-            );
-            emitTransaction(storeId, date, customerId, allSkus.get(idx));
+        int count = target - itemsAdded;
+        if (count <= 0) return;
+        rng.fillUniformIntInclusive(
+                0, columns.size() - 1,
+                FunctionalRNG.ruleKey(customerKey, RuleId.RANDOM_PICK), itemsAdded,
+                pickBuffer, count
+        );
+        for (int k = 0; k < count; k++) {
+            emitTransaction(storeId, dayIndex, customerId, pickBuffer[k]);
         }
     }
 
     private int buyOneByType(
-            String type,
-            int storeId, LocalDate date, int dayIndex, int customerId,
-            long rulePickId,
+            int type,
+            int storeId, int dayIndex, int customerId,
+            long pickKey,
             int itemsAdded
     ) {
-        List<Integer> skus = skusByType.get(type);
-        if (skus == null || skus.isEmpty()) return itemsAdded;
+        if (type < 0) return itemsAdded;
+        int typeSize = columns.typeSize(type);
+        if (typeSize == 0) return itemsAdded;
 
         int idx = rng.uniformIntInclusive(
-                0, skus.size() - 1,
-                storeId, dayIndex, customerId,
-                rulePickId, itemsAdded
+                0, typeSize - 1,
+                pickKey, itemsAdded
         );
-        int sku=skus.get(idx);
-        if(!inventoryManager.inStock(sku)){
-
-            for(int replace:skus){
-                if(inventoryManager.inStock(replace)){
-                    sku=replace;
-                    break;
-                }
-            }
-            if(!inventoryManager.inStock(sku)){
+        int skuIndex=columns.indexOfType(type, idx);
+        if(!inventory.inStockAt(skuIndex)){
+            metrics.replacementScan();
+            skuIndex=inventory.firstInStockOfType(type);
+            if(skuIndex<0){
+                metrics.stockout();
                 return itemsAdded;
             }
         }
-        emitTransaction(storeId, date, customerId, skus.get(idx));
+        emitTransaction(storeId, dayIndex, customerId, skuIndex);
         return itemsAdded + 1;
     }
 
-    private void emitTransaction(int storeId, LocalDate date, int customerId, int sku) {
-        Product p = catalog.productsBySku().get(sku);
-        if (p == null) return;
-        if(!inventoryManager.inStock(sku)){
+    private void emitTransaction(int storeId, int dayIndex, int customerId, int skuIndex) {
+        if(!inventory.inStockAt(skuIndex)){
             return;
         }
-        int Left= inventoryManager.sell(sku);
+        inventory.sellAt(skuIndex);
 
-        double salePrice = round2(p.basePrice() * SimulationConfig.PRICE_MULTIPLIER);
-        aggregator.accept(date, storeId, customerId, sku, salePrice);
+        aggregator.acceptIndexed(dayIndex, storeId, customerId, skuIndex, salePrices[skuIndex]);
+        if (topK != null) {
+            topK.add(skuIndex);
+        }
+        if (transactionLog != null) {
+            transactionLog.accept(storeId, dayIndex, customerId, columns.sku(skuIndex), salePriceCents[skuIndex]);
+        }
     }
 
     private static double round2(double v) {
         return Math.round(v * 100.0) / 100.0;
     }
 
-    private static final class RuleId {
+    // Draw ids outside the basket rules, which are keyed by their own ruleIds.
+    static final class RuleId {
         private RuleId() {}
 
         static final long CUSTOMERS_FOR_DAY = 1;
         static final long ITEM_COUNT = 2;
-
-        static final long MILK = 10;
-        static final long MILK_PICK = 11;
-        static final long CEREAL_GIVEN_MILK = 12;
-        static final long CEREAL_WITHOUT_MILK = 13;
-        static final long CEREAL_PICK = 14;
-
-        static final long BABY_FOOD = 20;
-        static final long BABY_PICK = 21;
-        static final long DIAPERS_GIVEN_BABY = 22;
-        static final long DIAPERS_WITHOUT_BABY = 23;
-        static final long DIAPERS_PICK = 24;
-
-        static final long BREAD = 30;
-        static final long BREAD_PICK = 31;
-
-        static final long PEANUT_BUTTER = 40;
-        static final long PB_PICK = 41;
-        static final long JAM_GIVEN_PB = 42;
-        static final long JAM_WITHOUT_PB = 43;
-        static final long JAM_PICK = 44;
-
         static final long RANDOM_PICK = 90;
     }
 }
@@ -0,0 +1,135 @@
+package io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+/**
+ * Compact binary transaction log written through a direct buffer.
+ *
+ * <p>Layout: a file header ({@link #MAGIC}, {@link #VERSION}, start date as
+ * epoch day) followed by blocks. Each block holds the items of a single
+ * store-day (a busy day may span several blocks) and starts with a fixed
+ * header: storeId, dayIndex, customer count, record count and payload length
+ * in bytes. The customer count is only set on the first block of a day. Records
+ * are three unsigned varints: customerId delta from the previous record in the
+ * block, SKU, and sale price in cents.
+ */
+public final class BinaryTransactionLog implements TransactionSink {
+
+    public static final int MAGIC = 0x54584C47; // "TXLG"
+    public static final int VERSION = 2;
+    public static final int FILE_HEADER_BYTES = 16;
+    public static final int BLOCK_HEADER_BYTES = 20;
+    public static final int MAX_BLOCK_PAYLOAD_BYTES = 1 << 20;
+
+    private static final int BUFFER_BYTES = 8 << 20;
+    private static final int MAX_RECORD_BYTES = 15;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    private boolean blockOpen;
+    private int blockStore;
+    private int blockDay;
+    private int blockCustomers;
+    private int blockHeaderPos;
+    private int blockRecords;
+    private int lastCustomerId;
+
+    public BinaryTransactionLog(Path path, LocalDate startDate) throws IOException {
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(startDate.toEpochDay());
+    }
+
+    @Override
+    public void beginDay(int storeId, int dayIndex, int customers) {
+        if (blockOpen) {
+            closeBlock();
+        }
+        openBlock(storeId, dayIndex, customers);
+    }
+
+    @Override
+    public void accept(int storeId, int dayIndex, int customerId, int sku, int salePriceCents) {
+        if (blockOpen && (dayIndex != blockDay
+                || storeId != blockStore
+                || buffer.position() - blockHeaderPos - BLOCK_HEADER_BYTES
+                        > MAX_BLOCK_PAYLOAD_BYTES - MAX_RECORD_BYTES)) {
+            closeBlock();
+        }
+        if (!blockOpen) {
+            openBlock(storeId, dayIndex, 0);
+        }
+        putVarint(customerId - lastCustomerId);
+        putVarint(sku);
+        putVarint(salePriceCents);
+        lastCustomerId = customerId;
+        blockRecords++;
+    }
+
+    private void openBlock(int storeId, int dayIndex, int customers) {
+        if (buffer.remaining() < BLOCK_HEADER_BYTES + MAX_BLOCK_PAYLOAD_BYTES) {
+            flush();
+        }
+        blockOpen = true;
+        blockStore = storeId;
+        blockDay = dayIndex;
+        blockCustomers = customers;
+        blockHeaderPos = buffer.position();
+        blockRecords = 0;
+        lastCustomerId = 0;
+        buffer.position(blockHeaderPos + BLOCK_HEADER_BYTES);
+    }
+
+    private void closeBlock() {
+        int payloadBytes = buffer.position() - blockHeaderPos - BLOCK_HEADER_BYTES;
+        buffer.putInt(blockHeaderPos, blockStore);
+        buffer.putInt(blockHeaderPos + 4, blockDay);
+        buffer.putInt(blockHeaderPos + 8, blockCustomers);
+        buffer.putInt(blockHeaderPos + 12, blockRecords);
+        buffer.putInt(blockHeaderPos + 16, payloadBytes);
+        blockOpen = false;
+    }
+
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (blockOpen) {
+                closeBlock();
+            }
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
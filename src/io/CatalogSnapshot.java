@@ -0,0 +1,239 @@
+package io;
+
+import model.Product;
+import model.ProductCatalog;
+import model.ProductColumns;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary snapshot of a parsed {@link ProductCatalog}, stored next to its
+ * products file and read back with one mapped read instead of re-parsing.
+ * <p>
+ * Layout (big-endian): magic, version, the source file's size, mtime and
+ * CRC32C, the CRC32C of the body; then the body: product count, string count,
+ * the string pool (UTF-8, length prefixed) and per-product columns in SKU
+ * order: SKU, price and pool indices of name, manufacturer, size and type.
+ * The catalog's {@link ProductColumns} are rebuilt from those arrays directly,
+ * with the manufacturer and size references renumbered into dense codes.
+ * A snapshot whose key does not match the current source, whose body fails
+ * its checksum, or that cannot be decoded, is treated as stale.
+ */
+public final class CatalogSnapshot {
+
+    public static final int MAGIC = 0x50435331; // "PCS1"
+    public static final int VERSION = 2;
+
+    private static final long MAX_MAP_BYTES = 1L << 30;
+
+    /** What the snapshot was built from; any difference makes it stale. */
+    public record SourceKey(long size, long modifiedMillis, int crc) {}
+
+    private CatalogSnapshot() {}
+
+    public static Path pathFor(Path source) {
+        return source.resolveSibling(source.getFileName() + ".snapshot");
+    }
+
+    public static SourceKey key(Path source) throws IOException {
+        CRC32C crc = new CRC32C();
+        long size;
+        try (FileChannel ch = FileChannel.open(source, StandardOpenOption.READ)) {
+            size = ch.size();
+            for (long pos = 0; pos < size; pos += MAX_MAP_BYTES) {
+                crc.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAX_MAP_BYTES, size - pos)));
+            }
+        }
+        return new SourceKey(size, Files.getLastModifiedTime(source).toMillis(), (int) crc.getValue());
+    }
+
+    /** The snapshot's catalog, or null when it is missing, stale or unreadable. */
+    public static ProductCatalog read(Path snapshot, SourceKey key) {
+        if (!Files.isRegularFile(snapshot)) return null;
+        try (FileChannel ch = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) return null;
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return decode(buf, key);
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt file can fail anywhere in decode; it is only a cache.
+            return null;
+        }
+    }
+
+    private static ProductCatalog decode(ByteBuffer buf, SourceKey key) {
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+        SourceKey stored = new SourceKey(buf.getLong(), buf.getLong(), buf.getInt());
+        if (!stored.equals(key)) return null;
+        int bodyCrc = buf.getInt();
+        CRC32C crc = new CRC32C();
+        crc.update(buf.slice());
+        if ((int) crc.getValue() != bodyCrc) return null;
+        int productCount = buf.getInt();
+        int stringCount = buf.getInt();
+
+        String[] pool = new String[stringCount];
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < stringCount; i++) {
+            int length = buf.getInt();
+            if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length * 2)];
+            buf.get(scratch, 0, length);
+            pool[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        Map<Integer, Product> productsBySku = new HashMap<>(Math.max(16, productCount * 4 / 3 + 1));
+        Map<String, List<Integer>> skusByType = new HashMap<>();
+        List<Integer> allSkus = new ArrayList<>(productCount);
+        int[] skus = new int[productCount];
+        double[] prices = new double[productCount];
+        int[] manufacturerRefs = new int[productCount];
+        int[] sizeRefs = new int[productCount];
+        int[] typeRefs = new int[productCount];
+        for (int i = 0; i < productCount; i++) {
+            int sku = buf.getInt();
+            double price = buf.getDouble();
+            Product p = new Product(
+                    sku,
+                    pool[buf.getInt()],
+                    pool[manufacturerRefs[i] = buf.getInt()],
+                    pool[sizeRefs[i] = buf.getInt()],
+                    pool[typeRefs[i] = buf.getInt()],
+                    price
+            );
+            skus[i] = sku;
+            prices[i] = price;
+            productsBySku.put(sku, p);
+            allSkus.add(sku);
+            // Products are stored in SKU order, so the type lists come out sorted.
+            skusByType.computeIfAbsent(p.type(), k -> new ArrayList<>()).add(sku);
+        }
+
+        String[] typeNames = skusByType.keySet().toArray(new String[0]);
+        Arrays.sort(typeNames);
+        if (typeNames.length > 256) return null;
+        Map<String, Integer> ordinals = new HashMap<>();
+        for (int t = 0; t < typeNames.length; t++) ordinals.put(typeNames[t], t);
+        int[] ordinalByRef = new int[stringCount];
+        for (int i = 0; i < productCount; i++) {
+            ordinalByRef[typeRefs[i]] = ordinals.get(pool[typeRefs[i]]);
+        }
+        byte[] typeOrdinals = new byte[productCount];
+        for (int i = 0; i < productCount; i++) typeOrdinals[i] = (byte) ordinalByRef[typeRefs[i]];
+
+        List<String> manufacturerNames = new ArrayList<>();
+        List<String> sizeNames = new ArrayList<>();
+        int[] manufacturerCodes = codes(manufacturerRefs, pool, manufacturerNames);
+        int[] sizeCodes = codes(sizeRefs, pool, sizeNames);
+
+        return new ProductCatalog(productsBySku, skusByType, allSkus,
+                ProductColumns.ofSorted(skus, prices, typeOrdinals, typeNames,
+                        manufacturerCodes, manufacturerNames.toArray(new String[0]),
+                        sizeCodes, sizeNames.toArray(new String[0])));
+    }
+
+    /** Renumbers pool references into codes in first-seen order, adding each new string to {@code names}. */
+    private static int[] codes(int[] refs, String[] pool, List<String> names) {
+        int[] codeByRef = new int[pool.length];
+        Arrays.fill(codeByRef, -1);
+        int[] codes = new int[refs.length];
+        for (int i = 0; i < refs.length; i++) {
+            int code = codeByRef[refs[i]];
+            if (code < 0) {
+                code = codeByRef[refs[i]] = names.size();
+                names.add(pool[refs[i]]);
+            }
+            codes[i] = code;
+        }
+        return codes;
+    }
+
+    /** Writes the snapshot to a temporary file and moves it into place. */
+    public static void write(Path snapshot, SourceKey key, ProductCatalog catalog) throws IOException {
+        Map<String, Integer> poolIndex = new HashMap<>();
+        List<byte[]> pool = new ArrayList<>();
+        List<Integer> skus = catalog.allSkus();
+        ProductColumns columns = catalog.columns();
+
+        // Manufacturers, sizes and types enter the pool once per table entry;
+        // products then reach them through their codes.
+        int[] manufacturerRefs = new int[columns.manufacturerCount()];
+        for (int c = 0; c < manufacturerRefs.length; c++) {
+            manufacturerRefs[c] = intern(columns.manufacturerName(c), poolIndex, pool);
+        }
+        int[] sizeRefs = new int[columns.sizeCount()];
+        for (int c = 0; c < sizeRefs.length; c++) {
+            sizeRefs[c] = intern(columns.sizeName(c), poolIndex, pool);
+        }
+        int[] typeRefs = new int[columns.typeCount()];
+        for (int t = 0; t < typeRefs.length; t++) {
+            typeRefs[t] = intern(columns.typeName(t), poolIndex, pool);
+        }
+
+        int[] refs = new int[skus.size() * 4];
+        for (int i = 0; i < skus.size(); i++) {
+            Product p = catalog.productsBySku().get(skus.get(i));
+            refs[i * 4] = intern(p.name(), poolIndex, pool);
+            refs[i * 4 + 1] = manufacturerRefs[columns.manufacturerCode(i)];
+            refs[i * 4 + 2] = sizeRefs[columns.sizeCode(i)];
+            refs[i * 4 + 3] = typeRefs[columns.typeOrdinal(i)];
+        }
+        long poolBytes = 0;
+        for (byte[] bytes : pool) poolBytes += Integer.BYTES + bytes.length;
+
+        long total = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4 + poolBytes + (long) skus.size() * (4 + 8 + 4 * 4);
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Catalog too large for a snapshot: " + total + " bytes");
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) total);
+        buf.putInt(MAGIC).putInt(VERSION);
+        buf.putLong(key.size()).putLong(key.modifiedMillis()).putInt(key.crc());
+        int bodyCrcAt = buf.position();
+        buf.putInt(0);
+        buf.putInt(skus.size()).putInt(pool.size());
+        for (byte[] bytes : pool) {
+            buf.putInt(bytes.length).put(bytes);
+        }
+        for (int i = 0; i < skus.size(); i++) {
+            Product p = catalog.productsBySku().get(skus.get(i));
+            buf.putInt(p.sku()).putDouble(p.basePrice());
+            for (int f = 0; f < 4; f++) buf.putInt(refs[i * 4 + f]);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buf.duplicate().flip().position(bodyCrcAt + Integer.BYTES));
+        buf.putInt(bodyCrcAt, (int) crc.getValue());
+        buf.flip();
+
+        // A unique name in the same directory, so concurrent writers never
+        // share a temporary file and the move stays on one file system.
+        Path dir = snapshot.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, snapshot.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (buf.hasRemaining()) ch.write(buf);
+            }
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** The pool index of {@code value}, adding it to the pool on first use. */
+    private static int intern(String value, Map<String, Integer> poolIndex, List<byte[]> pool) {
+        Integer ref = poolIndex.get(value);
+        if (ref == null) {
+            ref = pool.size();
+            poolIndex.put(value, ref);
+            pool.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return ref;
+    }
+}
@@ -0,0 +1,52 @@
+package io;
+
+import model.Transaction;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+/** Writes transactions in the {@link Transaction#toCsv()} layout. */
+public final class CsvTransactionLog implements TransactionSink {
+
+    private final BufferedWriter writer;
+    private final LocalDate startDate;
+    private int currentDay = -1;
+    private String currentDate;
+
+    public CsvTransactionLog(Path path, LocalDate startDate) throws IOException {
+        this.writer = Files.newBufferedWriter(path);
+        this.startDate = startDate;
+        writer.write("date,storeId,customerId,sku,salePrice\n");
+    }
+
+    @Override
+    public void accept(int storeId, int dayIndex, int customerId, int sku, int salePriceCents) {
+        if (dayIndex != currentDay) {
+            currentDay = dayIndex;
+            currentDate = startDate.plusDays(dayIndex).toString();
+        }
+        try {
+            writer.write(currentDate);
+            writer.write(',');
+            writer.write(Integer.toString(storeId));
+            writer.write(',');
+            writer.write(Integer.toString(customerId));
+            writer.write(',');
+            writer.write(Integer.toString(sku));
+            writer.write(',');
+            writer.write(Double.toString(salePriceCents / 100.0));
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
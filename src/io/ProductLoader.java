@@ -1,61 +1,114 @@
 package io;
 
+import config.SimulationConfig;
 import model.Product;
 import model.ProductCatalog;
 
-import java.io.BufferedReader;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.stream.IntStream;
 
+/**
+ * Loads the pipe-delimited products file
+ * ({@code Manufacturer|Product Name|Size|itemType|SKU|BasePrice}).
+ * <p>
+ * The file is memory-mapped in line-aligned chunks that are parsed in
+ * parallel straight from the mapped bytes: fields are trimmed and split by
+ * hand, SKUs and prices are parsed as numbers without building Strings, and
+ * repeated text (types, manufacturers, sizes) is shared within a chunk. The
+ * chunks are merged in file order, so the catalog is the same as a
+ * line-by-line read, and the merge makes every product point at one shared
+ * instance of each distinct type, manufacturer and size. A SKU on several
+ * rows keeps its last one. Text is ISO-8859-1.
+ * <p>
+ * With {@link SimulationConfig#CATALOG_SNAPSHOT_ENABLED}, {@link #load} reuses
+ * a {@link CatalogSnapshot} of the previous parse when the file is unchanged
+ * and rewrites it otherwise.
+ */
 public final class ProductLoader {
 
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    private static final int MAX_CHUNK_BYTES = 64 << 20;
+    private static final int FIELDS = 6;
+
     private ProductLoader() {}
 
     public static ProductCatalog load(Path path) throws Exception {
-        Map<Integer, Product> productsBySku = new HashMap<>(4096);
-        Map<String, List<Integer>> skusByType = new HashMap<>();
-        List<Integer> allSkus = new ArrayList<>(4096);
+        if (!SimulationConfig.CATALOG_SNAPSHOT_ENABLED) {
+            return parse(path);
+        }
+        // Keyed before parsing, so a file edited mid-parse leaves a stale snapshot.
+        CatalogSnapshot.SourceKey key = CatalogSnapshot.key(path);
+        Path snapshot = CatalogSnapshot.pathFor(path);
+        ProductCatalog cached = CatalogSnapshot.read(snapshot, key);
+        if (cached != null) {
+            return cached;
+        }
+        ProductCatalog catalog = parse(path);
+        try {
+            CatalogSnapshot.write(snapshot, key, catalog);
+        } catch (IOException e) {
+            // The snapshot is only a cache; the next run parses again.
+            System.err.println("Could not write catalog snapshot " + snapshot + ": " + e.getMessage());
+        }
+        return catalog;
+    }
 
-        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1)) {
-            String header = reader.readLine();
-            if (header == null) {
+    /** Parses the products file, ignoring any snapshot. */
+    public static ProductCatalog parse(Path path) throws Exception {
+        List<List<Product>> chunks;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size == 0) {
                 throw new IllegalStateException("Products file is empty");
             }
+            long dataStart = lineEnd(ch, 0, size);
+            long[] bounds = chunkBounds(ch, dataStart, size);
+            chunks = IntStream.range(0, bounds.length - 1)
+                    .parallel()
+                    .mapToObj(c -> parseChunk(ch, bounds[c], bounds[c + 1]))
+                    .toList();
+        }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.isBlank()) continue;
-
-                String[] cols = line.split("\\|", -1);
-                if (cols.length < 6) continue;
-
-                String manufacturer = cols[0].trim();
-                String name = cols[1].trim();
-                String size = cols[2].trim();
-                String type = cols[3].trim();
-                int sku = Integer.parseInt(cols[4].trim());
-                double basePrice = parsePrice(cols[5]);
-
-                Product product = new Product(
-                        sku,
-                        name,
-                        manufacturer,
-                        size,
-                        type,
-                        basePrice
+        int total = 0;
+        for (List<Product> chunk : chunks) total += chunk.size();
+        Map<Integer, Product> productsBySku = new HashMap<>(Math.max(16, total * 4 / 3 + 1));
+        Map<String, List<Integer>> skusByType = new HashMap<>();
+        List<Integer> allSkus = new ArrayList<>(total);
+        Map<String, String> shared = new HashMap<>();
+        for (List<Product> chunk : chunks) {
+            for (Product parsed : chunk) {
+                Product product = chunks.size() == 1 ? parsed : new Product(
+                        parsed.sku(),
+                        parsed.name(),
+                        shared.computeIfAbsent(parsed.manufacturer(), k -> k),
+                        shared.computeIfAbsent(parsed.size(), k -> k),
+                        shared.computeIfAbsent(parsed.type(), k -> k),
+                        parsed.basePrice()
                 );
-
-                productsBySku.put(sku, product);
-                allSkus.add(sku);
-                skusByType.computeIfAbsent(type, k -> new ArrayList<>()).add(sku);
+                productsBySku.put(product.sku(), product);
+                allSkus.add(product.sku());
+                skusByType.computeIfAbsent(product.type(), k -> new ArrayList<>()).add(product.sku());
             }
         }
 
         if (productsBySku.isEmpty()) {
             throw new IllegalStateException("No products loaded from file");
         }
+        if (productsBySku.size() != allSkus.size()) {
+            // A SKU listed more than once keeps its last row, as productsBySku already does.
+            allSkus = new ArrayList<>(productsBySku.keySet());
+            skusByType.clear();
+            for (Product product : productsBySku.values()) {
+                skusByType.computeIfAbsent(product.type(), k -> new ArrayList<>()).add(product.sku());
+            }
+        }
 
         allSkus.sort(Comparator.naturalOrder());
         for (List<Integer> list : skusByType.values()) {
@@ -65,14 +118,201 @@ public final class ProductLoader {
         return new ProductCatalog(productsBySku, skusByType, allSkus);
     }
 
-    private static double parsePrice(String raw) {
-        String s = raw.trim();
-        if (s.startsWith("$")) {
-            s = s.substring(1);
+    /** Chunk start offsets plus the end of the file, each chunk ending after a newline. */
+    private static long[] chunkBounds(FileChannel ch, long start, long size) throws IOException {
+        long data = size - start;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long target = Math.min(MAX_CHUNK_BYTES, Math.max(MIN_CHUNK_BYTES, data / (4L * parallelism) + 1));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        long pos = start;
+        while (size - pos > target) {
+            pos = lineEnd(ch, pos + target, size);
+            if (pos >= size) break;
+            bounds.add(pos);
+        }
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /** Offset just past the first newline at or after {@code from}, or {@code size}. */
+    private static long lineEnd(FileChannel ch, long from, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        long pos = from;
+        while (pos < size) {
+            buf.clear();
+            int n = ch.read(buf, pos);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') return pos + i + 1;
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    private static List<Product> parseChunk(FileChannel ch, long from, long to) {
+        MappedByteBuffer buf;
+        try {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        if (s.isEmpty()) {
-            return 0.0;
+        List<Product> products = new ArrayList<>();
+        StringTable strings = new StringTable();
+        int[] starts = new int[FIELDS];
+        int[] ends = new int[FIELDS];
+        int limit = buf.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buf.get(lineEnd) != '\n') lineEnd++;
+
+            // Split on '|' and trim each of the first six fields.
+            int fields = 0;
+            int fieldStart = lineStart;
+            for (int i = lineStart; i <= lineEnd && fields < FIELDS; i++) {
+                if (i == lineEnd || buf.get(i) == '|') {
+                    int a = fieldStart;
+                    int b = i;
+                    while (a < b && isSpace(buf.get(a))) a++;
+                    while (b > a && isSpace(buf.get(b - 1))) b--;
+                    starts[fields] = a;
+                    ends[fields] = b;
+                    fields++;
+                    fieldStart = i + 1;
+                }
+            }
+            if (fields == FIELDS) {
+                products.add(new Product(
+                        parseSku(buf, starts[4], ends[4]),
+                        strings.get(buf, starts[1], ends[1], false),
+                        strings.get(buf, starts[0], ends[0], true),
+                        strings.get(buf, starts[2], ends[2], true),
+                        strings.get(buf, starts[3], ends[3], true),
+                        parsePrice(buf, starts[5], ends[5])
+                ));
+            }
+            // Blank lines and lines with fewer than six fields are skipped.
+            lineStart = lineEnd + 1;
+        }
+        return products;
+    }
+
+    private static boolean isSpace(byte b) {
+        return (b & 0xFF) <= ' ';
+    }
+
+    private static int parseSku(ByteBuffer buf, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            negative = buf.get(i) == '-';
+            i++;
+        }
+        if (i == to) throw new NumberFormatException("Empty SKU");
+        long value = 0;
+        for (; i < to; i++) {
+            int d = buf.get(i) - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException("Bad SKU: " + text(buf, from, to));
+            value = value * 10 + d;
+            if (value > Integer.MAX_VALUE + 1L) throw new NumberFormatException("SKU out of range: " + text(buf, from, to));
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) throw new NumberFormatException("SKU out of range: " + text(buf, from, to));
+        return (int) value;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Parses {@code [$]digits[.digits]}. With at most 15 significant digits the
+     * digits and the power of ten are exact doubles, so one division gives the
+     * same correctly rounded value as {@link Double#parseDouble}; anything else
+     * falls back to it.
+     */
+    private static double parsePrice(ByteBuffer buf, int from, int to) {
+        int i = from;
+        if (i < to && buf.get(i) == '$') {
+            i++;
+            while (i < to && isSpace(buf.get(i))) i++;
+        }
+        if (i == to) return 0.0;
+        int numberStart = i;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < to; i++) {
+            byte b = buf.get(i);
+            if (b == '.' && scale < 0) {
+                scale = 0;
+            } else if (b >= '0' && b <= '9' && digits < 15) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (scale >= 0) scale++;
+            } else {
+                return Double.parseDouble(text(buf, numberStart, to));
+            }
+        }
+        if (digits == 0) return Double.parseDouble(text(buf, numberStart, to));
+        return scale <= 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+    }
+
+    private static String text(ByteBuffer buf, int from, int to) {
+        char[] chars = new char[to - from];
+        for (int i = from; i < to; i++) chars[i - from] = (char) (buf.get(i) & 0xFF);
+        return new String(chars);
+    }
+
+    /**
+     * Decodes ISO-8859-1 fields, returning one shared String per distinct value
+     * for the columns that repeat.
+     */
+    private static final class StringTable {
+
+        private String[] table = new String[256];
+        private int size;
+
+        String get(ByteBuffer buf, int from, int to, boolean shared) {
+            if (!shared) return text(buf, from, to);
+            int h = 1;
+            for (int i = from; i < to; i++) h = 31 * h + (buf.get(i) & 0xFF);
+            int mask = table.length - 1;
+            int slot = (h ^ (h >>> 16)) & mask;
+            String s;
+            while ((s = table[slot]) != null) {
+                if (matches(s, buf, from, to)) return s;
+                slot = (slot + 1) & mask;
+            }
+            s = text(buf, from, to);
+            table[slot] = s;
+            if (++size * 2 > table.length) grow();
+            return s;
+        }
+
+        private static boolean matches(String s, ByteBuffer buf, int from, int to) {
+            if (s.length() != to - from) return false;
+            for (int i = from; i < to; i++) {
+                if (s.charAt(i - from) != (char) (buf.get(i) & 0xFF)) return false;
+            }
+            return true;
+        }
+
+        private void grow() {
+            String[] old = table;
+            table = new String[old.length * 2];
+            int mask = table.length - 1;
+            for (String s : old) {
+                if (s == null) continue;
+                int h = 1;
+                for (int i = 0; i < s.length(); i++) h = 31 * h + s.charAt(i);
+                int slot = (h ^ (h >>> 16)) & mask;
+                while (table[slot] != null) slot = (slot + 1) & mask;
+                table[slot] = s;
+            }
         }
-        return Double.parseDouble(s);
     }
 }
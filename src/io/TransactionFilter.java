@@ -0,0 +1,24 @@
+package io;
+
+import java.time.LocalDate;
+
+/** Inclusive date and store ranges applied when replaying a transaction log. */
+public record TransactionFilter(
+        LocalDate fromDate,
+        LocalDate toDate,
+        int minStoreId,
+        int maxStoreId
+) {
+    public static final TransactionFilter ALL =
+            new TransactionFilter(LocalDate.MIN, LocalDate.MAX, Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+    boolean overlaps(int minStore, int maxStore, LocalDate minDate, LocalDate maxDate) {
+        return minStore <= maxStoreId && maxStore >= minStoreId
+                && !minDate.isAfter(toDate) && !maxDate.isBefore(fromDate);
+    }
+
+    boolean matches(int storeId, LocalDate date) {
+        return storeId >= minStoreId && storeId <= maxStoreId
+                && !date.isBefore(fromDate) && !date.isAfter(toDate);
+    }
+}
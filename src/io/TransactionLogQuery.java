@@ -0,0 +1,74 @@
+package io;
+
+import config.Scenario;
+import config.SimulationConfig;
+import model.ProductCatalog;
+import stats.Aggregator;
+import stats.Top10DailyExporter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+/**
+ * Rebuilds the reports from a binary transaction log instead of re-simulating.
+ * The scenario file must be the one the log was written with (the defaults
+ * when omitted); its start date is checked against the log.
+ *
+ * <pre>
+ * java io.TransactionLogQuery [--scenario FILE] [--log DIR] [--out DIR]
+ *                            [--from YYYY-MM-DD] [--to YYYY-MM-DD] [--stores MIN-MAX]
+ * </pre>
+ */
+public final class TransactionLogQuery {
+
+    private TransactionLogQuery() {}
+
+    public static void main(String[] args) throws Exception {
+        Path logDir = SimulationConfig.TRANSACTION_LOG_DIR;
+        Path outDir = SimulationConfig.D3_OUTPUT_DIR.resolve("replay");
+        Path scenarioFile = null;
+        LocalDate from = LocalDate.MIN;
+        LocalDate to = LocalDate.MAX;
+        int minStore = Integer.MIN_VALUE;
+        int maxStore = Integer.MAX_VALUE;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            if (value == null) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--scenario" -> scenarioFile = Path.of(value);
+                case "--log" -> logDir = Path.of(value);
+                case "--out" -> outDir = Path.of(value);
+                case "--from" -> from = LocalDate.parse(value);
+                case "--to" -> to = LocalDate.parse(value);
+                case "--stores" -> {
+                    String[] range = value.split("-", 2);
+                    minStore = Integer.parseInt(range[0]);
+                    maxStore = Integer.parseInt(range.length > 1 ? range[1] : range[0]);
+                }
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            i++;
+        }
+
+        Scenario scenario = scenarioFile != null ? Scenario.load(scenarioFile) : Scenario.defaults();
+        ProductCatalog catalog = ProductLoader.load(SimulationConfig.PRODUCTS_FILE_PATH);
+        Aggregator aggregator = new Aggregator(catalog, scenario);
+        TransactionLogReader.replay(
+                TransactionLogReader.logFiles(logDir),
+                new TransactionFilter(from, to, minStore, maxStore),
+                scenario,
+                catalog,
+                aggregator
+        );
+
+        Files.createDirectories(outDir);
+        aggregator.printSummary();
+        aggregator.exportD3Json(outDir);
+        Top10DailyExporter.export(aggregator, catalog, outDir.resolve("top10_daily.json"));
+        aggregator.exportHw3Full(outDir.resolve("hw3_comparsion.csv"));
+    }
+}
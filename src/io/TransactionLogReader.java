@@ -0,0 +1,212 @@
+package io;
+
+import config.Scenario;
+import model.ProductCatalog;
+import model.ProductColumns;
+import stats.Aggregator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Replays {@link BinaryTransactionLog} files into an {@link Aggregator}.
+ *
+ * <p>Block headers are read first to build an index; consecutive blocks are
+ * grouped into chunks of about {@link #CHUNK_BYTES}, each with the min/max
+ * store and day of its blocks. Chunks outside the filter are never mapped;
+ * the rest are memory-mapped and decoded in parallel. Each block (one
+ * store-day) is counted into a per-chunk SKU buffer and added to the target
+ * with {@link Aggregator#addDayCounts}, so no chunk holds a day x SKU matrix
+ * and the sums are merged in whatever order the chunks finish. Every log must
+ * have been written by a run of the given scenario.
+ */
+public final class TransactionLogReader {
+
+    private static final long CHUNK_BYTES = 16L << 20;
+
+    private TransactionLogReader() {}
+
+    private record Block(
+            long position,
+            int storeId,
+            int dayIndex,
+            LocalDate date,
+            int customers,
+            int records,
+            int payloadBytes
+    ) {}
+
+    private record Chunk(
+            Path file,
+            List<Block> blocks,
+            int minStore,
+            int maxStore,
+            LocalDate minDate,
+            LocalDate maxDate
+    ) {}
+
+    /** The *.bin logs in {@code dir}, in name order. */
+    public static List<Path> logFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".bin"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    public static void replay(
+            List<Path> files,
+            TransactionFilter filter,
+            Scenario scenario,
+            ProductCatalog catalog,
+            Aggregator target
+    ) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        for (Path file : files) {
+            for (Chunk chunk : index(file, scenario)) {
+                if (filter.overlaps(chunk.minStore(), chunk.maxStore(), chunk.minDate(), chunk.maxDate())) {
+                    chunks.add(chunk);
+                }
+            }
+        }
+        chunks.parallelStream().forEach(chunk -> decode(chunk, filter, catalog, target));
+    }
+
+    private static List<Chunk> index(Path file, Scenario scenario) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BinaryTransactionLog.FILE_HEADER_BYTES);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != BinaryTransactionLog.MAGIC) {
+                throw new IOException(file + " is not a transaction log");
+            }
+            if (header.getInt(4) != BinaryTransactionLog.VERSION) {
+                throw new IOException(file + " has unsupported version " + header.getInt(4));
+            }
+            LocalDate startDate = LocalDate.ofEpochDay(header.getLong(8));
+            if (!startDate.equals(scenario.startDate())) {
+                throw new IOException(file + " starts on " + startDate + ", but scenario "
+                        + scenario.name() + " starts on " + scenario.startDate());
+            }
+
+            ByteBuffer blockHeader = ByteBuffer.allocate(BinaryTransactionLog.BLOCK_HEADER_BYTES);
+            List<Block> blocks = new ArrayList<>();
+            int dayCount = scenario.dayCount();
+            long chunkStart = BinaryTransactionLog.FILE_HEADER_BYTES;
+            long pos = chunkStart;
+            long size = channel.size();
+            while (pos < size) {
+                readFully(channel, blockHeader, pos);
+                int dayIndex = blockHeader.getInt(4);
+                if (dayIndex < 0 || dayIndex >= dayCount) {
+                    throw new IOException(file + " has day " + dayIndex + " outside the "
+                            + dayCount + " days of scenario " + scenario.name());
+                }
+                Block block = new Block(
+                        pos,
+                        blockHeader.getInt(0),
+                        dayIndex,
+                        startDate.plusDays(dayIndex),
+                        blockHeader.getInt(8),
+                        blockHeader.getInt(12),
+                        blockHeader.getInt(16)
+                );
+                blocks.add(block);
+                pos += BinaryTransactionLog.BLOCK_HEADER_BYTES + block.payloadBytes();
+                if (pos - chunkStart >= CHUNK_BYTES || pos >= size) {
+                    chunks.add(chunk(file, blocks));
+                    blocks = new ArrayList<>();
+                    chunkStart = pos;
+                }
+            }
+        }
+        return chunks;
+    }
+
+    private static Chunk chunk(Path file, List<Block> blocks) {
+        int minStore = Integer.MAX_VALUE;
+        int maxStore = Integer.MIN_VALUE;
+        LocalDate minDate = LocalDate.MAX;
+        LocalDate maxDate = LocalDate.MIN;
+        for (Block b : blocks) {
+            minStore = Math.min(minStore, b.storeId());
+            maxStore = Math.max(maxStore, b.storeId());
+            if (b.date().isBefore(minDate)) minDate = b.date();
+            if (b.date().isAfter(maxDate)) maxDate = b.date();
+        }
+        return new Chunk(file, blocks, minStore, maxStore, minDate, maxDate);
+    }
+
+    private static void decode(
+            Chunk chunk,
+            TransactionFilter filter,
+            ProductCatalog catalog,
+            Aggregator target
+    ) {
+        ProductColumns columns = catalog.columns();
+        // Sales per SKU index of the current block, and the indices it touched.
+        int[] counts = new int[columns.size()];
+        int[] touched = new int[columns.size()];
+        int[] touchedCounts = new int[columns.size()];
+        Block first = chunk.blocks().get(0);
+        Block last = chunk.blocks().get(chunk.blocks().size() - 1);
+        long start = first.position();
+        long end = last.position() + BinaryTransactionLog.BLOCK_HEADER_BYTES + last.payloadBytes();
+
+        try (FileChannel channel = FileChannel.open(chunk.file(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            for (Block block : chunk.blocks()) {
+                if (!filter.matches(block.storeId(), block.date())) continue;
+                buf.position((int) (block.position() - start) + BinaryTransactionLog.BLOCK_HEADER_BYTES);
+                int touchedCount = 0;
+                long salesCents = 0L;
+                for (int r = 0; r < block.records(); r++) {
+                    getVarint(buf); // customer id delta; the counters do not need it
+                    int skuIndex = columns.indexOf(getVarint(buf));
+                    salesCents += getVarint(buf);
+                    if (skuIndex < 0) continue;
+                    if (counts[skuIndex]++ == 0) touched[touchedCount++] = skuIndex;
+                }
+                for (int i = 0; i < touchedCount; i++) {
+                    touchedCounts[i] = counts[touched[i]];
+                    counts[touched[i]] = 0;
+                }
+                target.addDayCounts(block.dayIndex(), block.customers(), block.records(), salesCents,
+                        touched, touchedCounts, touchedCount);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int getVarint(ByteBuffer buf) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+        buf.clear();
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) < 0) {
+                throw new IOException("Unexpected end of transaction log");
+            }
+        }
+    }
+}
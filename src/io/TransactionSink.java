@@ -0,0 +1,15 @@
+package io;
+
+import java.io.Closeable;
+
+/**
+ * Receives every sold item of one store as primitive fields, so logging does
+ * not create a {@link model.Transaction} per item.
+ */
+public interface TransactionSink extends Closeable {
+
+    /** Called once per store-day before its items, with that day's customer count. */
+    default void beginDay(int storeId, int dayIndex, int customers) {}
+
+    void accept(int storeId, int dayIndex, int customerId, int sku, int salePriceCents);
+}
@@ -0,0 +1,15 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** One report exporter of a finished run. */
+@Name("simulation.Export")
+@Label("Export")
+@Category("Simulation")
+class ExportEvent extends jdk.jfr.Event {
+
+    @Label("Report")
+    String report;
+}
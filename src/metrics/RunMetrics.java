@@ -0,0 +1,226 @@
+package metrics;
+
+import config.Scenario;
+import jdk.jfr.FlightRecorder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.NumberFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics of one run: the {@link StoreMetrics} of its stores added up as they
+ * are merged, a progress line every few seconds while the stores run, the
+ * duration of every exporter, and a JSON file with all of it at the end.
+ * <p>
+ * The progress line reads one slot per store (store-days, customers, items)
+ * that the store's thread overwrites once per store-day, so the store threads
+ * never contend on a shared counter. Days a resumed store restored from its
+ * checkpoint count as done there, so a resumed run still ends at 100%.
+ */
+public final class RunMetrics {
+
+    /** A report exporter, timed by {@link #timeExport}. */
+    public interface Export {
+        void run() throws Exception;
+    }
+
+    private static final int SLOTS_PER_STORE = 3;
+    private static final double[] PERCENTILES = {0.50, 0.90, 0.99};
+
+    private final String scenarioName;
+    private final int storeCount;
+    private final int dayCount;
+    private final long startNanos;
+    private final AtomicLongArray progress;
+
+    // Totals of the merged stores; touched by the merging thread only.
+    private long restoredStoreDays;
+    private long storeDays;
+    private long customers;
+    private long items;
+    private long replacementScans;
+    private long stockouts;
+    private long deliveryNanos;
+    private long dayNanos;
+    private long maxDayNanos;
+    private final long[] dayLatency = new long[StoreMetrics.LATENCY_BUCKETS];
+
+    private long simulationNanos = -1;
+    private final Map<String, Long> exportNanos = new LinkedHashMap<>();
+    private ScheduledExecutorService progressTimer;
+
+    public RunMetrics(Scenario scenario) {
+        this.scenarioName = scenario.name();
+        this.storeCount = scenario.storeCount();
+        this.dayCount = scenario.dayCount();
+        this.startNanos = System.nanoTime();
+        this.progress = new AtomicLongArray(storeCount * SLOTS_PER_STORE);
+    }
+
+    public StoreMetrics newStore(int storeId) {
+        return new StoreMetrics(this, storeId);
+    }
+
+    /** Overwrites the store's progress slots; called by its thread after each day. */
+    void publish(int storeId, long days, long storeCustomers, long storeItems) {
+        int base = (storeId - 1) * SLOTS_PER_STORE;
+        progress.lazySet(base, days);
+        progress.lazySet(base + 1, storeCustomers);
+        progress.lazySet(base + 2, storeItems);
+    }
+
+    /** Adds a finished store's counters into the run's totals. */
+    public void merge(StoreMetrics store) {
+        restoredStoreDays += store.restoredDays;
+        storeDays += store.storeDays;
+        customers += store.customers;
+        items += store.items;
+        replacementScans += store.replacementScans;
+        stockouts += store.stockouts;
+        deliveryNanos += store.deliveryNanos;
+        dayNanos += store.dayNanos;
+        maxDayNanos = Math.max(maxDayNanos, store.maxDayNanos);
+        for (int b = 0; b < dayLatency.length; b++) {
+            dayLatency[b] += store.dayLatency[b];
+        }
+    }
+
+    /** Prints a progress line every {@code seconds} until {@link #endSimulation}; 0 prints none. */
+    public void startProgress(int seconds) {
+        if (seconds <= 0) return;
+        progressTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        progressTimer.scheduleAtFixedRate(this::printProgress, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    private void printProgress() {
+        long days = 0;
+        long sumCustomers = 0;
+        long sumItems = 0;
+        for (int base = 0; base < progress.length(); base += SLOTS_PER_STORE) {
+            days += progress.get(base);
+            sumCustomers += progress.get(base + 1);
+            sumItems += progress.get(base + 2);
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long total = (long) storeCount * dayCount;
+        NumberFormat intFmt = NumberFormat.getIntegerInstance();
+        System.out.printf(
+                "Progress: %s/%s store-days (%d%%), %s customers (%s/s), %s items (%s/s)%n",
+                intFmt.format(days),
+                intFmt.format(total),
+                total == 0 ? 100 : days * 100 / total,
+                intFmt.format(sumCustomers),
+                intFmt.format(Math.round(sumCustomers / seconds)),
+                intFmt.format(sumItems),
+                intFmt.format(Math.round(sumItems / seconds))
+        );
+    }
+
+    /** Stops the progress line and takes the simulation's wall time. */
+    public void endSimulation() {
+        simulationNanos = System.nanoTime() - startNanos;
+        if (progressTimer != null) {
+            progressTimer.shutdownNow();
+            progressTimer = null;
+        }
+    }
+
+    /** Runs the exporter, recording its duration under {@code name}. */
+    public void timeExport(String name, Export export) throws Exception {
+        ExportEvent event = FlightRecorder.isInitialized() ? new ExportEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
+        try {
+            export.run();
+        } finally {
+            exportNanos.merge(name, System.nanoTime() - start, Long::sum);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.report = name;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /** Upper bound, in microseconds, of the store-day latency at quantile {@code q}. */
+    private long dayLatencyMicros(double q) {
+        long rank = (long) Math.ceil(q * storeDays);
+        long seen = 0;
+        for (int b = 0; b < dayLatency.length; b++) {
+            seen += dayLatency[b];
+            if (seen >= rank && seen > 0) return 1L << b;
+        }
+        return 0L;
+    }
+
+    public void writeJson(Path path) throws IOException {
+        long wallNanos = System.nanoTime() - startNanos;
+        double simSeconds = (simulationNanos >= 0 ? simulationNanos : wallNanos) / 1e9;
+        try (BufferedWriter w = Files.newBufferedWriter(path)) {
+            w.write("{\n");
+            w.write("  \"scenario\": \"" + scenarioName.replace("\\", "\\\\").replace("\"", "\\\"") + "\",\n");
+            w.write("  \"stores\": " + storeCount + ",\n");
+            w.write("  \"days\": " + dayCount + ",\n");
+            w.write("  \"wallSeconds\": " + seconds(wallNanos) + ",\n");
+            w.write("  \"simulationSeconds\": " + format(simSeconds) + ",\n");
+            w.write("  \"restoredStoreDays\": " + restoredStoreDays + ",\n");
+            w.write("  \"storeDays\": " + storeDays + ",\n");
+            w.write("  \"customers\": " + customers + ",\n");
+            w.write("  \"items\": " + items + ",\n");
+            w.write("  \"customersPerSecond\": " + format(customers / simSeconds) + ",\n");
+            w.write("  \"itemsPerSecond\": " + format(items / simSeconds) + ",\n");
+            w.write("  \"replacementScans\": " + replacementScans + ",\n");
+            w.write("  \"stockouts\": " + stockouts + ",\n");
+            w.write("  \"deliverySweepSeconds\": " + seconds(deliveryNanos) + ",\n");
+            w.write("  \"storeDaySeconds\": " + seconds(dayNanos) + ",\n");
+            w.write("  \"storeDayMicros\": {\n");
+            for (double q : PERCENTILES) {
+                w.write("    \"p" + Math.round(q * 100) + "\": " + dayLatencyMicros(q) + ",\n");
+            }
+            w.write("    \"max\": " + maxDayNanos / 1000 + ",\n");
+            w.write("    \"histogram\": [");
+            boolean first = true;
+            for (int b = 0; b < dayLatency.length; b++) {
+                if (dayLatency[b] == 0) continue;
+                w.write((first ? "\n" : ",\n") + "      {\"upToMicros\": " + (1L << b)
+                        + ", \"storeDays\": " + dayLatency[b] + "}");
+                first = false;
+            }
+            w.write(first ? "]\n" : "\n    ]\n");
+            w.write("  },\n");
+            w.write("  \"exportSeconds\": {");
+            first = true;
+            for (Map.Entry<String, Long> e : exportNanos.entrySet()) {
+                w.write((first ? "\n" : ",\n") + "    \"" + e.getKey() + "\": " + seconds(e.getValue()));
+                first = false;
+            }
+            w.write(first ? "}\n" : "\n  }\n");
+            w.write("}\n");
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return format(nanos / 1e9);
+    }
+
+    private static String format(double v) {
+        return String.format(Locale.ROOT, "%.3f", v);
+    }
+}
@@ -0,0 +1,38 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** One simulated store-day, from its delivery sweep to its last customer. */
+@Name("simulation.StoreDay")
+@Label("Store Day")
+@Category("Simulation")
+class StoreDayEvent extends jdk.jfr.Event {
+
+    @Label("Store")
+    int storeId;
+
+    @Label("Day Index")
+    int dayIndex;
+
+    @Label("Customers")
+    int customers;
+
+    @Label("Items")
+    long items;
+
+    @Label("Replacement Scans")
+    @Description("Basket rule picks that were out of stock and fell back to the first in-stock product of the type")
+    long replacementScans;
+
+    @Label("Stockouts")
+    @Description("Replacement scans that found the whole type out of stock")
+    long stockouts;
+
+    @Label("Delivery Sweep")
+    @Timespan(Timespan.NANOSECONDS)
+    long deliveryNanos;
+}
@@ -0,0 +1,112 @@
+package metrics;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Hot-path counters of one store's simulation. Only the thread simulating the
+ * store updates them, so they are plain fields with no atomics on the inner
+ * loop: each finished day is published to the run's progress slots, and the
+ * totals are added into the {@link RunMetrics} when the store is merged.
+ * Every store-day is also a {@link StoreDayEvent} while JFR records it.
+ */
+public final class StoreMetrics {
+
+    // Bucket b counts store-days that took [2^(b-1), 2^b) microseconds.
+    static final int LATENCY_BUCKETS = 40;
+
+    private final RunMetrics run;
+    private final int storeId;
+
+    // Days restored from a checkpoint; counted in the progress, not simulated.
+    int restoredDays;
+    long storeDays;
+    long customers;
+    long items;
+    long replacementScans;
+    long stockouts;
+    long deliveryNanos;
+    long dayNanos;
+    long maxDayNanos;
+    final long[] dayLatency = new long[LATENCY_BUCKETS];
+
+    private long dayStart;
+    private long scansAtDayStart;
+    private long stockoutsAtDayStart;
+    private long deliveryAtDayStart;
+    private StoreDayEvent event;
+
+    /** Counters of the store; {@code run} may be null when nothing reads the progress. */
+    public StoreMetrics(RunMetrics run, int storeId) {
+        this.run = run;
+        this.storeId = storeId;
+    }
+
+    /** The store resumes after {@code days} days restored from a checkpoint. */
+    public void restored(int days) {
+        restoredDays = days;
+        if (run != null) {
+            run.publish(storeId, restoredDays, 0L, 0L);
+        }
+    }
+
+    public void beginDay() {
+        // The first JFR event of a JVM sets up the event machinery (a few
+        // hundred ms), so none is created unless a recording has started.
+        if (FlightRecorder.isInitialized()) {
+            event = new StoreDayEvent();
+            event.begin();
+        }
+        scansAtDayStart = replacementScans;
+        stockoutsAtDayStart = stockouts;
+        deliveryAtDayStart = deliveryNanos;
+        dayStart = System.nanoTime();
+    }
+
+    /** Ends the delivery sweep that opens the day. */
+    public void endDelivery() {
+        deliveryNanos += System.nanoTime() - dayStart;
+    }
+
+    /** A basket rule's pick was out of stock, so the type was scanned for a replacement. */
+    public void replacementScan() {
+        replacementScans++;
+    }
+
+    /** The replacement scan found the whole type out of stock. */
+    public void stockout() {
+        stockouts++;
+    }
+
+    public void endDay(int dayIndex, int dayCustomers, long dayItems) {
+        long nanos = System.nanoTime() - dayStart;
+        storeDays++;
+        customers += dayCustomers;
+        items += dayItems;
+        dayNanos += nanos;
+        maxDayNanos = Math.max(maxDayNanos, nanos);
+        dayLatency[bucket(nanos)]++;
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.storeId = storeId;
+                event.dayIndex = dayIndex;
+                event.customers = dayCustomers;
+                event.items = dayItems;
+                event.replacementScans = replacementScans - scansAtDayStart;
+                event.stockouts = stockouts - stockoutsAtDayStart;
+                event.deliveryNanos = deliveryNanos - deliveryAtDayStart;
+                event.commit();
+            }
+            event = null;
+        }
+        if (run != null) {
+            run.publish(storeId, restoredDays + storeDays, customers, items);
+        }
+    }
+
+    static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(LATENCY_BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros));
+    }
+}
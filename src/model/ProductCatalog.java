@@ -6,5 +6,14 @@ import java.util.Map;
 public record ProductCatalog(
         Map<Integer, Product> productsBySku,
         Map<String, List<Integer>> skusByType,
-        List<Integer> allSkus
-) {}
+        List<Integer> allSkus,
+        ProductColumns columns
+) {
+    public ProductCatalog(
+            Map<Integer, Product> productsBySku,
+            Map<String, List<Integer>> skusByType,
+            List<Integer> allSkus
+    ) {
+        this(productsBySku, skusByType, allSkus, ProductColumns.of(productsBySku, skusByType, allSkus));
+    }
+}
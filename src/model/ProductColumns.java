@@ -0,0 +1,271 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable columnar view of a {@link ProductCatalog}. Every product gets a
+ * dense index (its position in the sorted SKU list); prices and types are
+ * stored in arrays under that index, and each type keeps the indices of its
+ * products in SKU order. Types, manufacturers and sizes are dictionary-encoded:
+ * each product holds a small integer code into a shared table of names, so
+ * type checks are integer comparisons and the snapshot writer and checkpoint
+ * key read each distinct name once.
+ */
+public final class ProductColumns {
+
+    private static final int EMPTY = -1;
+
+    private final int[] skus;
+    private final double[] basePrices;
+    private final byte[] typeOrdinals;
+    private final String[] typeNames;
+    private final int[][] indicesByType;
+    private final int[] manufacturerCodes;
+    private final String[] manufacturerNames;
+    private final int[] sizeCodes;
+    private final String[] sizeNames;
+
+    // Open-addressing sku -> index table, sized to a power of two.
+    private final int[] lookupSkus;
+    private final int[] lookupIndices;
+    private final int lookupMask;
+
+    private ProductColumns(
+            int[] skus,
+            double[] basePrices,
+            byte[] typeOrdinals,
+            String[] typeNames,
+            int[][] indicesByType,
+            int[] manufacturerCodes,
+            String[] manufacturerNames,
+            int[] sizeCodes,
+            String[] sizeNames
+    ) {
+        this.skus = skus;
+        this.basePrices = basePrices;
+        this.typeOrdinals = typeOrdinals;
+        this.typeNames = typeNames;
+        this.indicesByType = indicesByType;
+        this.manufacturerCodes = manufacturerCodes;
+        this.manufacturerNames = manufacturerNames;
+        this.sizeCodes = sizeCodes;
+        this.sizeNames = sizeNames;
+
+        int capacity = Integer.highestOneBit(Math.max(2, skus.length * 2 - 1)) << 1;
+        this.lookupSkus = new int[capacity];
+        this.lookupIndices = new int[capacity];
+        this.lookupMask = capacity - 1;
+        Arrays.fill(lookupIndices, EMPTY);
+        for (int i = 0; i < skus.length; i++) {
+            int slot = slot(skus[i]);
+            while (lookupIndices[slot] != EMPTY) slot = (slot + 1) & lookupMask;
+            lookupSkus[slot] = skus[i];
+            lookupIndices[slot] = i;
+        }
+    }
+
+    public static ProductColumns of(
+            Map<Integer, Product> productsBySku,
+            Map<String, List<Integer>> skusByType,
+            List<Integer> allSkus
+    ) {
+        int[] skus = allSkus.stream().mapToInt(Integer::intValue).toArray();
+        for (int i = 1; i < skus.length; i++) {
+            if (skus[i] <= skus[i - 1]) {
+                throw new IllegalArgumentException("allSkus must be sorted and unique");
+            }
+        }
+
+        Map<String, List<Integer>> sortedTypes = new TreeMap<>(skusByType);
+        if (sortedTypes.size() > 256) {
+            throw new IllegalArgumentException("Too many product types: " + sortedTypes.size());
+        }
+        String[] typeNames = sortedTypes.keySet().toArray(new String[0]);
+
+        double[] basePrices = new double[skus.length];
+        byte[] typeOrdinals = new byte[skus.length];
+        String[] manufacturers = new String[skus.length];
+        String[] sizes = new String[skus.length];
+
+        int[][] indicesByType = new int[typeNames.length][];
+        for (int t = 0; t < typeNames.length; t++) {
+            List<Integer> typeSkus = sortedTypes.get(typeNames[t]);
+            int[] indices = new int[typeSkus.size()];
+            for (int k = 0; k < indices.length; k++) {
+                int index = Arrays.binarySearch(skus, typeSkus.get(k));
+                if (index < 0) {
+                    throw new IllegalArgumentException("Type " + typeNames[t] + " lists unknown SKU " + typeSkus.get(k));
+                }
+                indices[k] = index;
+                typeOrdinals[index] = (byte) t;
+            }
+            indicesByType[t] = indices;
+        }
+        for (int i = 0; i < skus.length; i++) {
+            Product p = productsBySku.get(skus[i]);
+            basePrices[i] = p != null ? p.basePrice() : 0.0;
+            manufacturers[i] = p != null ? p.manufacturer() : null;
+            sizes[i] = p != null ? p.size() : null;
+        }
+
+        List<String> manufacturerNames = new ArrayList<>();
+        List<String> sizeNames = new ArrayList<>();
+        int[] manufacturerCodes = encode(manufacturers, manufacturerNames);
+        int[] sizeCodes = encode(sizes, sizeNames);
+        return new ProductColumns(skus, basePrices, typeOrdinals, typeNames, indicesByType,
+                manufacturerCodes, manufacturerNames.toArray(new String[0]),
+                sizeCodes, sizeNames.toArray(new String[0]));
+    }
+
+    /**
+     * Builds the columns from arrays already in SKU order: {@code typeNames} is
+     * sorted and {@code typeOrdinals[i]} indexes it, and the manufacturer and
+     * size codes index their name tables. The arrays are not copied.
+     */
+    public static ProductColumns ofSorted(
+            int[] skus,
+            double[] basePrices,
+            byte[] typeOrdinals,
+            String[] typeNames,
+            int[] manufacturerCodes,
+            String[] manufacturerNames,
+            int[] sizeCodes,
+            String[] sizeNames
+    ) {
+        if (manufacturerCodes.length != skus.length || sizeCodes.length != skus.length) {
+            throw new IllegalArgumentException("One manufacturer and size code per SKU expected");
+        }
+        checkCodes(manufacturerCodes, manufacturerNames.length, "manufacturer");
+        checkCodes(sizeCodes, sizeNames.length, "size");
+        for (int i = 1; i < skus.length; i++) {
+            if (skus[i] <= skus[i - 1]) {
+                throw new IllegalArgumentException("skus must be sorted and unique");
+            }
+        }
+        for (int t = 1; t < typeNames.length; t++) {
+            if (typeNames[t].compareTo(typeNames[t - 1]) <= 0) {
+                throw new IllegalArgumentException("typeNames must be sorted and unique");
+            }
+        }
+        int[] typeSizes = new int[typeNames.length];
+        for (byte ordinal : typeOrdinals) typeSizes[ordinal & 0xFF]++;
+        int[][] indicesByType = new int[typeNames.length][];
+        for (int t = 0; t < typeNames.length; t++) indicesByType[t] = new int[typeSizes[t]];
+        int[] filled = new int[typeNames.length];
+        for (int i = 0; i < skus.length; i++) {
+            int t = typeOrdinals[i] & 0xFF;
+            indicesByType[t][filled[t]++] = i;
+        }
+        return new ProductColumns(skus, basePrices, typeOrdinals, typeNames, indicesByType,
+                manufacturerCodes, manufacturerNames, sizeCodes, sizeNames);
+    }
+
+    private static void checkCodes(int[] codes, int nameCount, String column) {
+        for (int code : codes) {
+            if (code < 0 || code >= nameCount) {
+                throw new IllegalArgumentException("Bad " + column + " code " + code + " of " + nameCount);
+            }
+        }
+    }
+
+    /** Codes of {@code values} in first-seen order; the distinct values go to {@code names}. */
+    private static int[] encode(String[] values, List<String> names) {
+        Map<String, Integer> codes = new HashMap<>();
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i] != null ? values[i] : "";
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = names.size();
+                codes.put(value, code);
+                names.add(value);
+            }
+            result[i] = code;
+        }
+        return result;
+    }
+
+    public int size() {
+        return skus.length;
+    }
+
+    /** Dense index of {@code sku}, or -1 when the catalog does not contain it. */
+    public int indexOf(int sku) {
+        int slot = slot(sku);
+        int index;
+        while ((index = lookupIndices[slot]) != EMPTY) {
+            if (lookupSkus[slot] == sku) return index;
+            slot = (slot + 1) & lookupMask;
+        }
+        return EMPTY;
+    }
+
+    public int sku(int index) {
+        return skus[index];
+    }
+
+    public double basePrice(int index) {
+        return basePrices[index];
+    }
+
+    public int typeOrdinal(int index) {
+        return typeOrdinals[index] & 0xFF;
+    }
+
+    public int typeCount() {
+        return typeNames.length;
+    }
+
+    public String typeName(int ordinal) {
+        return typeNames[ordinal];
+    }
+
+    /** Ordinal of the named type, or -1 when no product has that type. */
+    public int typeOrdinalOf(String type) {
+        int ordinal = Arrays.binarySearch(typeNames, type);
+        return ordinal >= 0 ? ordinal : -1;
+    }
+
+    public int typeSize(int ordinal) {
+        return indicesByType[ordinal].length;
+    }
+
+    /** Index of the {@code k}-th product (in SKU order) of the given type. */
+    public int indexOfType(int ordinal, int k) {
+        return indicesByType[ordinal][k];
+    }
+
+    public int manufacturerCode(int index) {
+        return manufacturerCodes[index];
+    }
+
+    public String manufacturerName(int code) {
+        return manufacturerNames[code];
+    }
+
+    public int manufacturerCount() {
+        return manufacturerNames.length;
+    }
+
+    public int sizeCode(int index) {
+        return sizeCodes[index];
+    }
+
+    public String sizeName(int code) {
+        return sizeNames[code];
+    }
+
+    public int sizeCount() {
+        return sizeNames.length;
+    }
+
+    private int slot(int sku) {
+        int h = sku * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & lookupMask;
+    }
+}
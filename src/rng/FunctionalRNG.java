@@ -51,6 +51,101 @@ public final class FunctionalRNG {
         return lowInclusive + offset;
     }
 
+    // The coordinates are mixed independently and combined with XOR, so the
+    // (storeId, dayIndex, customerId) part can be hashed once per customer and
+    // reused for every draw; the keyed methods below return exactly what the
+    // coordinate methods above return.
+
+    /** Hash prefix for one customer; pass it to {@link #ruleKey}. */
+    public long customerKey(long storeId, long dayIndex, long customerId) {
+        return seed
+                ^ mix64(storeId + 0x9E3779B97F4A7C15L)
+                ^ mix64(dayIndex + 0xC2B2AE3D27D4EB4FL)
+                ^ mix64(customerId + 0x165667B19E3779F9L);
+    }
+
+    /** Hash prefix for one rule of one customer. */
+    public static long ruleKey(long customerKey, long ruleId) {
+        return customerKey ^ ruleSalt(ruleId);
+    }
+
+    /** The per-rule part of {@link #ruleKey}, constant for a rule: {@code ruleKey = customerKey ^ ruleSalt}. */
+    public static long ruleSalt(long ruleId) {
+        return mix64(ruleId + 0x85EBCA77C2B2AE63L);
+    }
+
+    /** {@link #ruleSalt} with step 0 folded in, for {@link #bernoulliFirst}. */
+    public static long firstDrawSalt(long ruleId) {
+        return ruleSalt(ruleId) ^ mix64(0x27D4EB2F165667C5L);
+    }
+
+    /**
+     * Integer form of a probability: a draw's 53-bit mantissa {@code m} has
+     * {@code m * 2^-53 < p} exactly when {@code m < threshold53(p)}.
+     */
+    public static long threshold53(double probability) {
+        if (!(probability > 0.0)) return 0L;
+        if (probability >= 1.0) return 1L << 53;
+        return (long) Math.ceil(probability * (1L << 53));
+    }
+
+    /**
+     * Same as {@code bernoulli(p, ruleKey(customerKey, ruleId), 0)} given
+     * {@code threshold53(p)} and {@code firstDrawSalt(ruleId)}, with one hash
+     * instead of three.
+     */
+    public static boolean bernoulliFirst(long threshold53, long customerKey, long firstDrawSalt) {
+        return (splitMix64(customerKey ^ firstDrawSalt) >>> 11) < threshold53;
+    }
+
+    public double uniform01(long ruleKey, long step) {
+        long mantissa = (draw(ruleKey, step) >>> 11);
+        return mantissa * (1.0 / (1L << 53));
+    }
+
+    public boolean bernoulli(double probability, long ruleKey, long step) {
+        if (probability <= 0.0) return false;
+        if (probability >= 1.0) return true;
+        return uniform01(ruleKey, step) < probability;
+    }
+
+    public int uniformIntInclusive(int lowInclusive, int highInclusive, long ruleKey, long step) {
+        if (highInclusive < lowInclusive) {
+            throw new IllegalArgumentException("Invalid range");
+        }
+        int span = highInclusive - lowInclusive + 1;
+        return lowInclusive + floorMod(draw(ruleKey, step), span);
+    }
+
+    /** Fills {@code out[0..count)} with the draws for steps {@code firstStep..firstStep+count-1}. */
+    public void fillUniformIntInclusive(
+            int lowInclusive,
+            int highInclusive,
+            long ruleKey,
+            long firstStep,
+            int[] out,
+            int count
+    ) {
+        if (highInclusive < lowInclusive) {
+            throw new IllegalArgumentException("Invalid range");
+        }
+        int span = highInclusive - lowInclusive + 1;
+        for (int i = 0; i < count; i++) {
+            out[i] = lowInclusive + floorMod(draw(ruleKey, firstStep + i), span);
+        }
+    }
+
+    /** Fills {@code out[0..count)} with the draws for steps {@code firstStep..firstStep+count-1}. */
+    public void fillUniform01(long ruleKey, long firstStep, double[] out, int count) {
+        for (int i = 0; i < count; i++) {
+            out[i] = (draw(ruleKey, firstStep + i) >>> 11) * (1.0 / (1L << 53));
+        }
+    }
+
+    private static long draw(long ruleKey, long step) {
+        return splitMix64(ruleKey ^ mix64(step + 0x27D4EB2F165667C5L));
+    }
+
     private static int floorMod(long x, int m) {
         long r = x % m;
         return (int) (r >= 0 ? r : r + m);
@@ -1,45 +1,113 @@
 package stats;
 
+import config.BasketRule;
+import config.Scenario;
 import config.SimulationConfig;
 import model.Product;
 import model.ProductCatalog;
+import model.ProductColumns;
 
 import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public final class Aggregator {
 
     private final ProductCatalog catalog;
     private static final int WINDOW_DAYS = 180;
-    private final Map<LocalDate, Integer> dailyCustomers = new HashMap<>();
-    private List<LocalDate> firstNDates(int windowDays) {
-        List<LocalDate> dates = dailySkuCounts.keySet().stream().sorted().toList();
-        return dates.subList(0, Math.min(windowDays, dates.size()));
-    }
-    private double avgCustomersPerDay(int windowDays) {
-        List<LocalDate> dates = firstNDates(windowDays);
-        long sum = 0;
-        for (LocalDate d : dates) sum += dailyCustomers.getOrDefault(d, 0);
-        return dates.isEmpty() ? 0.0 : sum / (double) dates.size();
+
+    // Counters are dense arrays addressed by day index (days since START_DATE)
+    // and the catalog's dense SKU index, so accept() never boxes or allocates.
+    private final LocalDate startDate;
+    private final int dayCount;
+    private final ProductColumns columns;
+    private final int skuCount;
+    private final int[] dailyCustomers;
+    private final long[] dailyItems;
+    private final long[] skuCounts;
+    private final long[] dailySkuCounts;
+    // Row of day d in dailySkuCounts is (d & dayRowMask): -1 keeps every day,
+    // a store partial keeps a power-of-two ring of recent days (see storePartial).
+    private final int dayRowMask;
+    // Sales of a store partial already added to the run's aggregator by addDay.
+    private long salesCentsAdded;
+    // Report group of each type ordinal: its REPORT_TYPES position, or OTHER.
+    private final int[] reportGroupByType;
+    // Mean basket size and per-type rule rates of the scenario, for the
+    // expected-sales estimates.
+    private final double avgItemsPerCustomer;
+    private final Map<String, Double> ruleProbabilities;
+
+    private double avgCustomersPerDay(WindowIndex windows, int windowDays) {
+        int n = windows.leading(windowDays);
+        return n == 0 ? 0.0 : windows.customers(0, n) / (double) n;
     }
     private long totalCustomers;
     private long totalItems;
-    private double totalSales;
-
-    private final Map<Integer, Long> skuCounts;
-    private final Map<LocalDate, Map<Integer, Long>> dailySkuCounts = new HashMap<>();
+    // Sale prices are whole cents, so summing cents keeps the total independent
+    // of the order in which store partials are merged.
+    private long totalSalesCents;
 
     public Aggregator(ProductCatalog catalog) {
+        this(catalog, Scenario.defaults());
+    }
+
+    /** Covers the scenario's date range; partials merged together must share it. */
+    public Aggregator(ProductCatalog catalog, Scenario scenario) {
+        this(catalog, scenario, -1);
+    }
+
+    /**
+     * Counters of one store while it is simulated. Per-SKU daily counts are
+     * kept for only the last {@code recentDays} days (rounded up to a power of
+     * two), so a partial costs a few rows rather than a year of the catalog;
+     * every finished day is handed to the run's aggregator with
+     * {@link #addDay}. Only the day-level accessors the engine, SQLiteSink
+     * and CheckpointLog use work on a partial, not the reports.
+     */
+    public static Aggregator storePartial(ProductCatalog catalog, Scenario scenario, int recentDays) {
+        if (recentDays <= 0) {
+            throw new IllegalArgumentException("recentDays must be positive: " + recentDays);
+        }
+        int rows = Integer.highestOneBit(recentDays);
+        if (rows < recentDays) rows <<= 1;
+        return new Aggregator(catalog, scenario, rows - 1);
+    }
+
+    private Aggregator(ProductCatalog catalog, Scenario scenario, int dayRowMask) {
         this.catalog = catalog;
         this.totalCustomers = 0L;
         this.totalItems = 0L;
-        this.totalSales = 0.0;
-        this.skuCounts = new HashMap<>(4096);
+        this.totalSalesCents = 0L;
+        this.startDate = scenario.startDate();
+        this.dayCount = scenario.dayCount();
+        this.avgItemsPerCustomer = (scenario.itemsPerCustomerLow() + scenario.itemsPerCustomerHigh()) / 2.0;
+        this.ruleProbabilities = BasketRule.expectedPerCustomer(scenario.basketRules());
+        this.columns = catalog.columns();
+        this.skuCount = columns.size();
+        this.dailyCustomers = new int[dayCount];
+        this.dailyItems = new long[dayCount];
+        this.skuCounts = new long[skuCount];
+        this.dayRowMask = dayRowMask;
+        int rows = dayRowMask < 0 ? dayCount : Math.min(dayRowMask + 1, dayCount);
+        long cells = (long) rows * skuCount;
+        if (cells > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Daily counts of " + rows + " days x " + skuCount
+                    + " SKUs do not fit one array; shorten the scenario or the catalog");
+        }
+        this.dailySkuCounts = new long[(int) cells];
+        this.reportGroupByType = new int[columns.typeCount()];
+        for (int t = 0; t < reportGroupByType.length; t++) {
+            int group = REPORT_TYPES.indexOf(columns.typeName(t));
+            reportGroupByType[t] = group >= 0 ? group : OTHER;
+        }
     }
 
     public void accept(
@@ -48,16 +116,281 @@ public final class Aggregator {
             int customerId,
             int sku,
             double salePrice
+    ) {
+        int day = dayIndex(date);
+        int skuIndex = columns.indexOf(sku);
+        if (skuIndex < 0) {
+            totalItems++;
+            totalSalesCents += Math.round(salePrice * 100.0);
+            dailyItems[day]++;
+            return;
+        }
+        acceptIndexed(day, storeId, customerId, skuIndex, salePrice);
+    }
+
+    /** Same as {@link #accept} with the day and SKU already resolved to indices. */
+    public void acceptIndexed(
+            int dayIndex,
+            int storeId,
+            int customerId,
+            int skuIndex,
+            double salePrice
     ) {
         totalItems++;
-        totalSales += salePrice;
-        skuCounts.merge(sku, 1L, Long::sum);
-        dailySkuCounts
-                .computeIfAbsent(date, d -> new HashMap<>())
-                .merge(sku, 1L, Long::sum);
+        totalSalesCents += Math.round(salePrice * 100.0);
+        dailyItems[dayIndex]++;
+        skuCounts[skuIndex]++;
+        dailySkuCounts[(dayIndex & dayRowMask) * skuCount + skuIndex]++;
+    }
+
+    /**
+     * Adds a store partial's finished day. Store threads call it concurrently;
+     * the counters are integer sums, so the result does not depend on the
+     * order the days arrive in.
+     */
+    public synchronized void addDay(Aggregator store, int dayIndex) {
+        checkFull();
+        int customers = store.dailyCustomers[dayIndex];
+        long items = store.dailyItems[dayIndex];
+        totalCustomers += customers;
+        totalItems += items;
+        dailyCustomers[dayIndex] += customers;
+        dailyItems[dayIndex] += items;
+        int from = store.rowBase(dayIndex);
+        int to = dayIndex * skuCount;
+        for (int i = 0; i < skuCount; i++) {
+            long c = store.dailySkuCounts[from + i];
+            skuCounts[i] += c;
+            dailySkuCounts[to + i] += c;
+        }
+        totalSalesCents += store.totalSalesCents - store.salesCentsAdded;
+        store.salesCentsAdded = store.totalSalesCents;
+    }
+
+    /**
+     * Adds one store-day given as counts: its customers, its items and sales
+     * (including SKUs the catalog lacks), and {@code counts[i]} sales of the
+     * SKU at index {@code skuIndices[i]} for i below {@code n}. Replay threads
+     * call it concurrently; like {@link #addDay} the result is order-independent.
+     */
+    public synchronized void addDayCounts(
+            int dayIndex,
+            int customers,
+            long items,
+            long salesCents,
+            int[] skuIndices,
+            int[] counts,
+            int n
+    ) {
+        checkFull();
+        totalCustomers += customers;
+        totalItems += items;
+        totalSalesCents += salesCents;
+        dailyCustomers[dayIndex] += customers;
+        dailyItems[dayIndex] += items;
+        int base = dayIndex * skuCount;
+        for (int i = 0; i < n; i++) {
+            skuCounts[skuIndices[i]] += counts[i];
+            dailySkuCounts[base + skuIndices[i]] += counts[i];
+        }
+    }
+
+    /** Clears the ring row that {@code dayIndex} reuses; a no-op unless this is a store partial. */
+    public void startDay(int dayIndex) {
+        if (dayRowMask >= 0) {
+            Arrays.fill(dailySkuCounts, rowBase(dayIndex), rowBase(dayIndex) + skuCount, 0L);
+        }
+    }
+
+    private int rowBase(int dayIndex) {
+        return (dayIndex & dayRowMask) * skuCount;
+    }
+
+    private void checkFull() {
+        if (dayRowMask >= 0) {
+            throw new IllegalStateException("A store partial only keeps its recent days");
+        }
+    }
+
+    public void merge(Aggregator other) {
+        checkFull();
+        other.checkFull();
+        totalCustomers += other.totalCustomers;
+        totalItems += other.totalItems;
+        totalSalesCents += other.totalSalesCents;
+        for (int d = 0; d < dayCount; d++) {
+            dailyCustomers[d] += other.dailyCustomers[d];
+            dailyItems[d] += other.dailyItems[d];
+        }
+        for (int i = 0; i < skuCounts.length; i++) {
+            skuCounts[i] += other.skuCounts[i];
+        }
+        for (int i = 0; i < dailySkuCounts.length; i++) {
+            dailySkuCounts[i] += other.dailySkuCounts[i];
+        }
+    }
+
+    /**
+     * Writes the counters so another process can add them with
+     * {@link #mergeFrom}; daily SKU counts are sent sparse.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        checkFull();
+        out.writeLong(startDate.toEpochDay());
+        out.writeInt(dayCount);
+        out.writeInt(skuCount);
+        StateIO.writeVarLong(out, totalCustomers);
+        StateIO.writeVarLong(out, totalItems);
+        StateIO.writeVarLong(out, totalSalesCents);
+        StateIO.writeSparse(out, dailyCustomers);
+        StateIO.writeSparse(out, dailyItems);
+        StateIO.writeSparse(out, skuCounts);
+        StateIO.writeSparse(out, dailySkuCounts);
     }
+
+    /** Like {@link #merge} for counters written by {@link #writeTo} over the same catalog and dates. */
+    public void mergeFrom(DataInput in) throws IOException {
+        checkFull();
+        long epochDay = in.readLong();
+        int days = in.readInt();
+        int skus = in.readInt();
+        if (epochDay != startDate.toEpochDay() || days != dayCount || skus != skuCount) {
+            throw new IOException("Partial covers " + LocalDate.ofEpochDay(epochDay) + " + " + days
+                    + " days of " + skus + " SKUs, expected " + startDate + " + " + dayCount + " of " + skuCount);
+        }
+        totalCustomers += StateIO.readVarLong(in);
+        totalItems += StateIO.readVarLong(in);
+        totalSalesCents += StateIO.readVarLong(in);
+        StateIO.addSparse(in, dailyCustomers);
+        StateIO.addSparse(in, dailyItems);
+        StateIO.addSparse(in, skuCounts);
+        StateIO.addSparse(in, dailySkuCounts);
+    }
+
+    public long totalItems() {
+        return totalItems;
+    }
+
+    long salesCents() {
+        return totalSalesCents;
+    }
+
+    /**
+     * Copies the daily counters of days [fromDay, toDay) into the arrays, which
+     * hold toDay - fromDay days (the SKU rows one after another).
+     */
+    void copyDays(int fromDay, int toDay, int[] customers, long[] items, long[] skuRows) {
+        System.arraycopy(dailyCustomers, fromDay, customers, 0, toDay - fromDay);
+        System.arraycopy(dailyItems, fromDay, items, 0, toDay - fromDay);
+        for (int d = fromDay; d < toDay; d++) {
+            System.arraycopy(dailySkuCounts, rowBase(d), skuRows, (d - fromDay) * skuCount, skuCount);
+        }
+    }
+
+    /**
+     * Adds days copied by {@link #copyDays} and the sales they made; the
+     * totals and per-SKU counts follow from the daily counters.
+     */
+    synchronized void addDays(int fromDay, int toDay, int[] customers, long[] items, long[] skuRows, long salesCents) {
+        checkFull();
+        totalSalesCents += salesCents;
+        for (int d = 0; d < toDay - fromDay; d++) {
+            totalCustomers += customers[d];
+            totalItems += items[d];
+            dailyCustomers[fromDay + d] += customers[d];
+            dailyItems[fromDay + d] += items[d];
+            int base = (fromDay + d) * skuCount;
+            int row = d * skuCount;
+            for (int i = 0; i < skuCount; i++) {
+                skuCounts[i] += skuRows[row + i];
+                dailySkuCounts[base + i] += skuRows[row + i];
+            }
+        }
+    }
+
+    private int dayIndex(LocalDate date) {
+        return (int) ChronoUnit.DAYS.between(startDate, date);
+    }
+
+    /** Dates that recorded at least one sale, in order. */
+    public List<LocalDate> dates() {
+        List<LocalDate> dates = new ArrayList<>(dayCount);
+        for (int d = 0; d < dayCount; d++) {
+            if (dailyItems[d] > 0) dates.add(startDate.plusDays(d));
+        }
+        return dates;
+    }
+
+    public long dailyCount(LocalDate date, int sku) {
+        int skuIndex = columns.indexOf(sku);
+        if (skuIndex < 0) return 0L;
+        checkFull();
+        return dailySkuCounts[dayIndex(date) * skuCount + skuIndex];
+    }
+
+    int dailyCustomersAt(int dayIndex) {
+        return dailyCustomers[dayIndex];
+    }
+
+    /** Copies the day's count of every SKU, by dense index, into {@code out}. */
+    long dailySkuCountAt(int dayIndex, int skuIndex) {
+        return dailySkuCounts[rowBase(dayIndex) + skuIndex];
+    }
+
+    /**
+     * Daily counts of the given SKUs over {@link #dates()}, one array per SKU,
+     * read day by day from the day x SKU store in one pass. SKUs missing from
+     * the catalog get zeros.
+     */
+    public long[][] dailySeries(int[] skus) {
+        checkFull();
+        int[] indices = new int[skus.length];
+        for (int j = 0; j < skus.length; j++) indices[j] = columns.indexOf(skus[j]);
+        int days = 0;
+        for (int d = 0; d < dayCount; d++) {
+            if (dailyItems[d] > 0) days++;
+        }
+        long[][] series = new long[skus.length][days];
+        int k = 0;
+        for (int d = 0; d < dayCount; d++) {
+            if (dailyItems[d] == 0) continue;
+            int base = d * skuCount;
+            for (int j = 0; j < indices.length; j++) {
+                if (indices[j] >= 0) series[j][k] = dailySkuCounts[base + indices[j]];
+            }
+            k++;
+        }
+        return series;
+    }
+
+    /**
+     * Prefix-sum index over the days recorded so far, for window totals and
+     * averages. It does not see later updates.
+     */
+    public WindowIndex windows() {
+        checkFull();
+        return new WindowIndex(startDate, skuCount, dailyCustomers, dailyItems, dailySkuCounts);
+    }
+
+    /** Snapshot of the per-day counts; only SKUs sold that day are present. */
     public Map<LocalDate, Map<Integer, Long>> dailySkuCounts() {
-        return dailySkuCounts;
+        checkFull();
+        Map<LocalDate, Map<Integer, Long>> result = new LinkedHashMap<>();
+        for (int d = 0; d < dayCount; d++) {
+            if (dailyItems[d] == 0) continue;
+            Map<Integer, Long> day = new HashMap<>();
+            int base = d * skuCount;
+            for (int i = 0; i < skuCount; i++) {
+                long c = dailySkuCounts[base + i];
+                if (c > 0) day.put(columns.sku(i), c);
+            }
+            result.put(startDate.plusDays(d), day);
+        }
+        return result;
+    }
+
+    private double totalSales() {
+        return totalSalesCents / 100.0;
     }
 
     public void printSummary() {
@@ -68,13 +401,13 @@ public final class Aggregator {
         System.out.println("===== SIMULATION SUMMARY =====");
         System.out.println("Total Customers : " + intFmt.format(totalCustomers));
         System.out.println("Total Items     : " + intFmt.format(totalItems));
-        System.out.println("Total Sales     : " + moneyFmt.format(round2(totalSales)));
+        System.out.println("Total Sales     : " + moneyFmt.format(totalSales()));
         System.out.println();
 
         System.out.println("Top 10 Items (by count)");
         System.out.println("--------------------------------------------");
 
-        List<Map.Entry<Integer, Long>> top10 = getTop10();
+        List<Map.Entry<Integer, Long>> top10 = getTopK(SimulationConfig.TOP_K);
 
         int rank = 1;
         for (Map.Entry<Integer, Long> e : top10) {
@@ -91,12 +424,31 @@ public final class Aggregator {
         System.out.println();
     }
 
-    public List<Map.Entry<Integer, Long>> getTop10() {
-        return skuCounts.entrySet()
-                .stream()
-                .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
-                .limit(10)
-                .collect(Collectors.toList());
+    /** The {@code k} best-selling SKUs of the year with their counts; ties in SKU order. */
+    public List<Map.Entry<Integer, Long>> getTopK(int k) {
+        return entries(TopK.largest(skuCounts, k), skuCounts, 0);
+    }
+
+    /** The {@code k} best-selling SKUs of one day. */
+    public List<Map.Entry<Integer, Long>> getTopK(LocalDate date, int k) {
+        checkFull();
+        int base = dayIndex(date) * skuCount;
+        return entries(TopK.largest(dailySkuCounts, base, skuCount, k), dailySkuCounts, base);
+    }
+
+    /** The {@code k} best-selling SKUs of the window {@code [from, to)} of the index. */
+    public List<Map.Entry<Integer, Long>> getTopK(WindowIndex windows, int from, int to, int k) {
+        long[] totals = new long[skuCount];
+        windows.skuTotals(from, to, totals);
+        return entries(TopK.largest(totals, k), totals, 0);
+    }
+
+    private List<Map.Entry<Integer, Long>> entries(int[] indices, long[] counts, int base) {
+        List<Map.Entry<Integer, Long>> entries = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            entries.add(Map.entry(columns.sku(i), counts[base + i]));
+        }
+        return entries;
     }
 
     public void exportD3Json(Path outputDir) throws Exception {
@@ -109,64 +461,35 @@ public final class Aggregator {
             w.write("{\n");
             w.write("  \"totalCustomers\": " + totalCustomers + ",\n");
             w.write("  \"totalItems\": " + totalItems + ",\n");
-            w.write("  \"totalSales\": " + round2(totalSales) + "\n");
+            w.write("  \"totalSales\": " + totalSales() + "\n");
             w.write("}\n");
         }
     }
-    private long totalItemsInWindow(int windowDays) {
-        long sum = 0;
-        for (LocalDate d : firstNDates(windowDays)) {
-            for (long c : dailySkuCounts.getOrDefault(d, Map.of()).values()) sum += c;
-        }
-        return sum;
+    public Map<Integer, Double> computerAveragePerDay(int windowDays) {
+        WindowIndex windows = windows();
+        return computerAveragePerDay(skuCountsInWindow(windows, windowDays), windows.leading(windowDays));
     }
 
-    public Map<Integer, Double> computerAveragePerDay(int windowDays) {
-        List<LocalDate> dates = firstNDates(windowDays);
-        Map<Integer, Long> total = new HashMap<>();
-        for (LocalDate d : dates) {
-            Map<Integer, Long> day = dailySkuCounts.getOrDefault(d, Map.of());
-            for (var e : day.entrySet()) {
-                total.merge(e.getKey(), e.getValue(), Long::sum);
-            }
-        }
-        int n = dates.size();
+    private Map<Integer, Double> computerAveragePerDay(long[] total, int n) {
         Map<Integer, Double> result = new HashMap<>();
-        for (var e : total.entrySet()) {
-            result.put(e.getKey(), n == 0 ? 0.0 : e.getValue() / (double) n);
+        for (int i = 0; i < skuCount; i++) {
+            if (total[i] == 0) continue;
+            result.put(columns.sku(i), n == 0 ? 0.0 : total[i] / (double) n);
         }
         return result;
     }
 
     public void addCustomers(LocalDate date, int count) {
         totalCustomers += count;
-        dailyCustomers.merge(date, count, Integer::sum);
-    }
-    private Map<String, Double> computeProbabilities() {
-        double pMilk = 0.70;
-        double pCereal = pMilk * 0.50 + (1 - pMilk) * 0.05;
-        double pBaby = 0.20;
-        double pDiapers = pBaby * 0.80 + (1 - pBaby) * 0.01;
-        double pPB = 0.10;
-        double pJam = pPB * 0.90 + (1 - pPB) * 0.05;
-        double pBread = 0.50;
-        return Map.of(
-                SimulationConfig.TYPE_MILK, pMilk,
-                SimulationConfig.TYPE_CEREAL, pCereal,
-                SimulationConfig.TYPE_BABY_FOOD, pBaby,
-                SimulationConfig.TYPE_DIAPERS, pDiapers,
-                SimulationConfig.TYPE_PEANUT_BUTTER, pPB,
-                SimulationConfig.TYPE_BREAD, pBread,
-                SimulationConfig.TYPE_JELLY_JAM, pJam
-        );
+        dailyCustomers[dayIndex(date)] += count;
     }
     public Map<Integer, Double> computerExpectedPerDay(int windowDays) {
+        return computerExpectedPerDay(avgCustomersPerDay(windows(), windowDays));
+    }
+
+    private Map<Integer, Double> computerExpectedPerDay(double avgCustomers) {
         Map<Integer, Double> result = new HashMap<>();
-        List<LocalDate> dates = firstNDates(windowDays);
-        int n = dates.size();
-        double avgCustomers = avgCustomersPerDay(windowDays);
-        double avgItemsPerCustomer=(SimulationConfig.ITEMS_PER_CUSTOMER_LOW_INCLUSIVE+SimulationConfig.ITEMS_PER_CUSTOMER_HIGH_INCLUSIVE) / 2.0;
-        Map<String, Double> prob = computeProbabilities();
+        Map<String, Double> prob = ruleProbabilities;
         Map<String, List<Integer>> skusByType = catalog.skusByType();
         double specialTotal = 0.0;
         for (var entry : prob.entrySet()) {
@@ -192,116 +515,97 @@ public final class Aggregator {
         }
         return result;
     }
-    private static final Set<String> SPECIAL = Set.of(
-            "Milk","Cereal","Baby Food","Diapers",
-            "Peanut Butter","Bread","Jelly/Jam"
+    // Special types in report order, followed by "Other" for every other type.
+    private static final List<String> REPORT_TYPES = List.of(
+            SimulationConfig.TYPE_MILK, SimulationConfig.TYPE_CEREAL,
+            SimulationConfig.TYPE_BABY_FOOD, SimulationConfig.TYPE_DIAPERS,
+            SimulationConfig.TYPE_PEANUT_BUTTER, SimulationConfig.TYPE_BREAD,
+            SimulationConfig.TYPE_JELLY_JAM, "Other"
     );
+    private static final int OTHER = REPORT_TYPES.size() - 1;
 
-    public Map<String, Double> averageExpectedPerDayByType(int windowDays) {
-        Map<Integer, Double> avgBySku = computerExpectedPerDay(windowDays);
-        Map<String, Double> result = new HashMap<>();
-
-        for (var e : avgBySku.entrySet()) {
-
-            int sku = e.getKey();
-            double value = e.getValue();
-
-            Product p = catalog.productsBySku().get(sku);
-            if (p == null) continue;
-
-            String type = p.type();
-            if (!SPECIAL.contains(type)) type = "Other";
+    private int reportGroup(int skuIndex) {
+        return reportGroupByType[columns.typeOrdinal(skuIndex)];
+    }
 
-            result.merge(type, value, Double::sum);
+    private int[] reportGroupSizes() {
+        int[] sizes = new int[REPORT_TYPES.size()];
+        for (int t = 0; t < reportGroupByType.length; t++) {
+            sizes[reportGroupByType[t]] += columns.typeSize(t);
         }
+        return sizes;
+    }
 
-        return result;
+    public Map<String, Double> averageExpectedPerDayByType(int windowDays) {
+        return byType(computerExpectedPerDay(windowDays));
     }
 
     public Map<String, Double> averagePerDayByType(int windowDays) {
-        Map<Integer, Double> avgBySku = computerAveragePerDay(windowDays);
+        return byType(computerAveragePerDay(windowDays));
+    }
+
+    /** Sums per-SKU values by special type, with every other type as "Other". */
+    private Map<String, Double> byType(Map<Integer, Double> avgBySku) {
         Map<String, Double> result = new HashMap<>();
 
         for (var e : avgBySku.entrySet()) {
-            int sku = e.getKey();
-            double value = e.getValue();
-            Product p = catalog.productsBySku().get(sku);
-            if (p == null) continue;
-            String type = p.type();
-            if (!SPECIAL.contains(type)) type = "Other";
-            result.merge(type, value, Double::sum);
+
+            int skuIndex = columns.indexOf(e.getKey());
+            if (skuIndex < 0) continue;
+
+            result.merge(REPORT_TYPES.get(reportGroup(skuIndex)), e.getValue(), Double::sum);
         }
 
         return result;
     }
 
-    private long[] minMaxNonSpecial14Days(int windowDays) {
-        List<LocalDate> dates = dailySkuCounts.keySet()
-                .stream()
-                .sorted()
-                .toList();
-
-        int n = Math.min(windowDays, dates.size());
-        Map<Integer, Long> sku14 = new HashMap<>();
-        for (int i = 0; i < n; i++) {
-            Map<Integer, Long> day = dailySkuCounts.get(dates.get(i));
-
-            for (var e : day.entrySet()) {
-
-                Product p = catalog.productsBySku().get(e.getKey());
-                if (p == null) continue;
-
-                if (SPECIAL.contains(p.type())) continue;
-
-                sku14.merge(e.getKey(), e.getValue(), Long::sum);
-            }
-        }
+    private long[] minMaxNonSpecial(long[] sku14) {
 
         long min = Long.MAX_VALUE;
         long max = Long.MIN_VALUE;
+        boolean any = false;
+
+        for (int i = 0; i < skuCount; i++) {
+            long v = sku14[i];
+            if (v == 0) continue;
+            if (reportGroup(i) != OTHER) continue;
 
-        for (long v : sku14.values()) {
             min = Math.min(min, v);
             max = Math.max(max, v);
+            any = true;
         }
 
-        if (sku14.isEmpty()) return new long[]{0,0};
+        if (!any) return new long[]{0,0};
 
         return new long[]{min, max};
     }
-    private Map<Integer, Long> skuCountsInWindow(int windowDays) {
-        Map<Integer, Long> total = new HashMap<>();
-        for (LocalDate d : firstNDates(windowDays)) {
-            Map<Integer, Long> day = dailySkuCounts.getOrDefault(d, Map.of());
-            for (var e : day.entrySet()) total.merge(e.getKey(), e.getValue(), Long::sum);
-        }
+    private long[] skuCountsInWindow(WindowIndex windows, int windowDays) {
+        long[] total = new long[skuCount];
+        windows.skuTotals(0, windows.leading(windowDays), total);
         return total;
     }
     public void exportHw3Full(Path path) throws Exception {
-        int days = dailySkuCounts.size();
         int windowDays = WINDOW_DAYS;
-        Map<String, Double> probabilities = computeProbabilities();
-        double avgCustomersPerDay = avgCustomersPerDay(windowDays);
-        int n = firstNDates(windowDays).size();
-        double avgSalesPerDay = n == 0 ? 0.0 : totalItemsInWindow(windowDays) / (double) n;
-        Map<String, Double> actualAvg = averagePerDayByType(windowDays);
-        Map<String, Double> expectedAvg = averageExpectedPerDayByType(windowDays);
-
-        Map<Integer, Long> skuWindow = skuCountsInWindow(windowDays);
+        WindowIndex windows = windows();
+        int n = windows.leading(windowDays);
+        long itemsInWindow = windows.items(0, n);
+        long[] skuWindow = skuCountsInWindow(windows, windowDays);
+
+        Map<String, Double> probabilities = ruleProbabilities;
+        double avgCustomersPerDay = avgCustomersPerDay(windows, windowDays);
+        double avgSalesPerDay = n == 0 ? 0.0 : itemsInWindow / (double) n;
+        Map<String, Double> actualAvg = byType(computerAveragePerDay(skuWindow, n));
+        Map<String, Double> expectedAvg = byType(computerExpectedPerDay(avgCustomersPerDay));
+
         Map<String, Long> totalByType = new HashMap<>();
-        for (var e : skuWindow.entrySet()) {
-            Product p = catalog.productsBySku().get(e.getKey());
-            if (p == null) continue;
-            String type = SPECIAL.contains(p.type()) ? p.type() : "Other";
-            totalByType.merge(type, e.getValue(), Long::sum);
+        for (int i = 0; i < skuCount; i++) {
+            if (skuWindow[i] == 0) continue;
+            totalByType.merge(REPORT_TYPES.get(reportGroup(i)), skuWindow[i], Long::sum);
         }
+        int[] groupSizes = reportGroupSizes();
 
-
-        long[] mm = minMaxNonSpecial14Days(windowDays);
-        List<String> order = List.of(
-                "Milk","Cereal","Baby Food","Diapers",
-                "Peanut Butter","Bread","Jelly/Jam","Other"
-        );
+        long[] mm = minMaxNonSpecial(skuWindow);
+        List<String> order = REPORT_TYPES;
         double actualGrand = actualAvg.values().stream().mapToDouble(Double::doubleValue).sum();
         double expectedGrand = expectedAvg.values().stream().mapToDouble(Double::doubleValue).sum();
         try (BufferedWriter w = Files.newBufferedWriter(path)) {
@@ -330,13 +634,7 @@ public final class Aggregator {
                 long total = totalByType.getOrDefault(type, 0L);
                 double avg = actualAvg.getOrDefault(type, 0.0);
                 double pct = actualGrand == 0 ? 0 : avg / actualGrand * 100.0;
-                int itemCount = type.equals("Other")
-                        ? catalog.allSkus().size()
-                        - SPECIAL.stream()
-                        .mapToInt(t -> catalog.skusByType()
-                                .getOrDefault(t, List.of()).size()).sum()
-                        : catalog.skusByType()
-                        .getOrDefault(type, List.of()).size();
+                int itemCount = groupSizes[REPORT_TYPES.indexOf(type)];
 
                 double perItem = itemCount == 0 ? 0 : avg / itemCount;
                 w.write(type + ","
@@ -352,17 +650,10 @@ public final class Aggregator {
             w.write("Type,Total Sales,Avg Sales Per Day,% Total,# Items in Type,Sales Per Item\n");
             for (String type : order) {
                 double avg = expectedAvg.getOrDefault(type, 0.0);
-                int dayn = firstNDates(windowDays).size();
-                long total = Math.round(avg * dayn);
+                long total = Math.round(avg * n);
                 double pct = expectedGrand == 0 ? 0 : avg / expectedGrand * 100.0;
 
-                int itemCount = type.equals("Other")
-                        ? catalog.allSkus().size()
-                        - SPECIAL.stream()
-                        .mapToInt(t -> catalog.skusByType()
-                                .getOrDefault(t, List.of()).size()).sum()
-                        : catalog.skusByType()
-                        .getOrDefault(type, List.of()).size();
+                int itemCount = groupSizes[REPORT_TYPES.indexOf(type)];
 
                 double perItem = itemCount == 0 ? 0 : avg / itemCount;
 
@@ -373,13 +664,60 @@ public final class Aggregator {
                         + itemCount + ","
                         + round2(perItem) + "\n");
             }
-            w.write("\nTotal sales," + totalItemsInWindow(windowDays) + "\n");
+            w.write("\nTotal sales," + itemsInWindow + "\n");
         }
     }
 
+    /**
+     * Every window of each length in {@code windowLengths}, one row per window:
+     * the first row of a length is its leading window and the following rows
+     * roll it forward one day at a time. Lengths longer than the recorded days
+     * give a single window over all of them.
+     */
+    public void exportWindowReport(Path path, int[] windowLengths) throws Exception {
+        WindowIndex windows = windows();
+        List<String> order = REPORT_TYPES;
+        int[] group = new int[skuCount];
+        for (int i = 0; i < skuCount; i++) {
+            group[i] = reportGroup(i);
+        }
+
+        long[] totals = new long[skuCount];
+        long[] byGroup = new long[order.size()];
+        try (BufferedWriter w = Files.newBufferedWriter(path)) {
+            w.write("windowDays,startDate,endDate,days,customers,avgCustomersPerDay,items,avgItemsPerDay");
+            for (String type : order) w.write("," + type);
+            w.write(",minNonSpecialSku,maxNonSpecialSku\n");
+
+            for (int length : windowLengths) {
+                int span = Math.min(length, windows.size());
+                if (span == 0) continue;
+                for (int to = span; to <= windows.size(); to++) {
+                    int from = to - span;
+                    windows.skuTotals(from, to, totals);
+                    Arrays.fill(byGroup, 0L);
+                    for (int i = 0; i < skuCount; i++) {
+                        byGroup[group[i]] += totals[i];
+                    }
+                    long[] mm = minMaxNonSpecial(totals);
+
+                    w.write(length + ","
+                            + windows.date(from) + ","
+                            + windows.date(to - 1) + ","
+                            + span + ","
+                            + windows.customers(from, to) + ","
+                            + round2(windows.customers(from, to) / (double) span) + ","
+                            + windows.items(from, to) + ","
+                            + round2(windows.items(from, to) / (double) span));
+                    for (long total : byGroup) w.write("," + round2(total / (double) span));
+                    w.write("," + mm[0] + "," + mm[1] + "\n");
+                }
+            }
+        }
+    }
 
     private void exportTop10Json(Path path) throws Exception {
-        List<Map.Entry<Integer, Long>> top10 = getTop10();
+        List<Map.Entry<Integer, Long>> top10 = getTopK(SimulationConfig.TOP_K);
 
         try (BufferedWriter w = Files.newBufferedWriter(path)) {
             w.write("[\n");
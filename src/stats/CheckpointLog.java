@@ -0,0 +1,426 @@
+package stats;
+
+import config.Scenario;
+import config.SimulationConfig;
+import model.ProductCatalog;
+import model.ProductColumns;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of a run's progress, so a run that stopped (or whose
+ * exports failed) can resume from its last checkpoint instead of day zero.
+ * Every store appends one record per interval of days: the interval's daily
+ * counters and sales, the customer flags and top-K periods of its days, and
+ * the store's inventory at its end. A record only adds to the ones before it,
+ * so a checkpoint costs one interval, not the whole state.
+ * <p>
+ * {@link #record} runs on the store's thread and only copies arrays; a single
+ * writer thread encodes the queued records, appends them with a CRC and forces
+ * them to disk. A resumed log drops a torn record at its end (a crash
+ * mid-write), and {@link #restore} replays each store's records into fresh
+ * state.
+ * <p>
+ * Intervals end on multiples of the interval length, so with top-K on they
+ * must be whole periods: the trackers are then empty at every checkpoint.
+ */
+public final class CheckpointLog implements AutoCloseable {
+
+    private static final int MAGIC = 0x434B5031; // "CKP1"
+    private static final int VERSION = 1;
+
+    private record Interval(
+            int storeId,
+            int fromDay,
+            int toDay,
+            long salesCents,
+            int[] customers,
+            long[] items,
+            long[] skuRows,
+            int[] itemsLeft,
+            int[] caseOrder,
+            int[] belowTarget,
+            List<StoreTopKReport.Period> periods,
+            byte[][] flags
+    ) {}
+
+    private static final Interval END = new Interval(
+            0, 0, 0, 0L, null, null, null, null, null, null, null, null);
+
+    private final Path path;
+    private final int intervalDays;
+    private final int dayCount;
+    private final int skuCount;
+    // Records of an earlier run per store, dropped once restored.
+    private final List<List<byte[]>> restored;
+    // Sales and top-K periods of each store at its last checkpoint, so a record
+    // carries only what came after. Each slot is touched by its store's thread only.
+    private final long[] salesAtCheckpoint;
+    private final int[] periodsAtCheckpoint;
+
+    private final FileChannel channel;
+    private final BlockingQueue<Interval> queue;
+    private final Thread writer;
+    private volatile Throwable failure;
+
+    /** Starts a new log at {@code path}, or continues the one there when {@code resume} is set. */
+    public CheckpointLog(Path path, Scenario scenario, ProductCatalog catalog, boolean resume) throws IOException {
+        this(path, scenario, catalog, resume,
+                SimulationConfig.CHECKPOINT_INTERVAL_DAYS, SimulationConfig.CHECKPOINT_QUEUE_INTERVALS);
+    }
+
+    public CheckpointLog(
+            Path path,
+            Scenario scenario,
+            ProductCatalog catalog,
+            boolean resume,
+            int intervalDays,
+            int queueIntervals
+    ) throws IOException {
+        if (intervalDays <= 0) {
+            throw new IllegalArgumentException("intervalDays must be positive: " + intervalDays);
+        }
+        this.path = path;
+        this.intervalDays = intervalDays;
+        this.dayCount = scenario.dayCount();
+        this.skuCount = catalog.columns().size();
+        this.restored = new ArrayList<>(scenario.storeCount());
+        for (int s = 0; s < scenario.storeCount(); s++) {
+            restored.add(new ArrayList<>());
+        }
+        this.salesAtCheckpoint = new long[scenario.storeCount()];
+        this.periodsAtCheckpoint = new int[scenario.storeCount()];
+
+        String key = describe(scenario, catalog, intervalDays);
+        if (resume && Files.exists(path)) {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            readRecords(key);
+        } else {
+            if (resume) {
+                System.out.println("No checkpoint at " + path + "; starting from the first day");
+            }
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(header);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            writeFully(ByteBuffer.wrap(header.toByteArray()));
+            channel.force(false);
+        }
+        this.queue = new ArrayBlockingQueue<>(queueIntervals);
+        this.writer = new Thread(this::drain, "checkpoint-writer");
+        // A run that dies without close() must still exit; it resumes from what was forced.
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Everything the simulated values depend on, so a log is only resumed by the run that wrote it. */
+    private static String describe(Scenario s, ProductCatalog catalog, int intervalDays) {
+        return "stores=" + s.storeCount()
+                + " dates=" + s.startDate() + ".." + s.endDateInclusive()
+                + " customers=" + s.weekdayCustomersLow() + ".." + s.weekdayCustomersHigh()
+                + "+" + s.weekendCustomerIncrease()
+                + " items=" + s.itemsPerCustomerLow() + ".." + s.itemsPerCustomerHigh()
+                + " price=" + s.priceMultiplier()
+                + " seed=" + s.seed()
+                + " rules=" + s.basketRules()
+                + " skus=" + catalog.allSkus().size()
+                + " catalog=" + Integer.toHexString(catalogCrc(catalog))
+                + " interval=" + intervalDays
+                + " topK=" + SimulationConfig.STORE_TOP_K + "/" + SimulationConfig.STORE_TOP_K_PERIOD_DAYS
+                + (SimulationConfig.STORE_TOP_K_APPROXIMATE ? "~" + SimulationConfig.STORE_TOP_K_CAPACITY : "");
+    }
+
+    public int intervalDays() {
+        return intervalDays;
+    }
+
+    /** CRC32C of every product's fields in SKU order; an edited catalog changes the run. */
+    private static int catalogCrc(ProductCatalog catalog) {
+        CRC32C crc = new CRC32C();
+        ProductColumns columns = catalog.columns();
+        // Each distinct manufacturer, size and type is hashed once; products
+        // then contribute their codes into those tables.
+        for (int c = 0; c < columns.manufacturerCount(); c++) updateField(crc, columns.manufacturerName(c));
+        for (int c = 0; c < columns.sizeCount(); c++) updateField(crc, columns.sizeName(c));
+        for (int t = 0; t < columns.typeCount(); t++) updateField(crc, columns.typeName(t));
+        ByteBuffer numbers = ByteBuffer.allocate(Integer.BYTES + Double.BYTES + 3 * Integer.BYTES);
+        for (int i = 0; i < columns.size(); i++) {
+            numbers.clear();
+            numbers.putInt(columns.sku(i)).putDouble(columns.basePrice(i))
+                    .putInt(columns.manufacturerCode(i)).putInt(columns.sizeCode(i))
+                    .putInt(columns.typeOrdinal(i)).flip();
+            crc.update(numbers);
+            updateField(crc, catalog.productsBySku().get(columns.sku(i)).name());
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void updateField(CRC32C crc, String field) {
+        // NUL ends each field, so shifting text between fields changes the CRC.
+        crc.update(field.getBytes(StandardCharsets.UTF_8));
+        crc.update(0);
+    }
+
+    /** Whether a checkpoint is due at the end of {@code dayIndex}. */
+    public boolean due(int dayIndex) {
+        return (dayIndex + 1) % intervalDays == 0 || dayIndex == dayCount - 1;
+    }
+
+    /**
+     * Replays the store's records from an earlier run into the run's
+     * aggregator, the store's inventory partition, top-K periods and customer summary (the
+     * last two may be null). Returns the first day left to simulate.
+     */
+    public int restore(
+            int storeId,
+            Aggregator aggregator,
+            StoreInventory inventory,
+            StoreTopKReport topKReport,
+            CustomerSummaryCollector summaryCollector
+    ) throws IOException {
+        int next = 0;
+        for (byte[] payload : restored.get(storeId - 1)) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            StateIO.readVarInt(in); // store id, already used to file the record
+            int fromDay = StateIO.readVarInt(in);
+            int toDay = StateIO.readVarInt(in);
+            if (fromDay != next || toDay <= fromDay || toDay > dayCount) {
+                throw new IOException("Checkpoint of store " + storeId + " has days " + fromDay + ".." + toDay
+                        + " after day " + next);
+            }
+            int days = toDay - fromDay;
+            long salesCents = StateIO.readVarLong(in);
+            int[] customers = new int[days];
+            long[] items = new long[days];
+            long[] skuRows = new long[days * skuCount];
+            for (int d = 0; d < days; d++) customers[d] = StateIO.readVarInt(in);
+            for (int d = 0; d < days; d++) items[d] = StateIO.readVarLong(in);
+            StateIO.addSparse(in, skuRows);
+            aggregator.addDays(fromDay, toDay, customers, items, skuRows, salesCents);
+            inventory.readState(in);
+
+            if (in.readBoolean()) {
+                List<StoreTopKReport.Period> periods = StoreTopKReport.readPeriods(in);
+                if (topKReport != null) topKReport.appendPeriods(storeId, periods);
+            } else if (topKReport != null) {
+                throw new IOException("Checkpoint was written without the store top-K report");
+            }
+            if (in.readBoolean()) {
+                for (int d = fromDay; d < toDay; d++) {
+                    byte[] flags = new byte[StateIO.readVarInt(in)];
+                    in.readFully(flags);
+                    if (summaryCollector != null) summaryCollector.restoreDay(storeId, d, flags);
+                }
+            } else if (summaryCollector != null) {
+                throw new IOException("Checkpoint was written without the customer summary");
+            }
+            next = toDay;
+        }
+        restored.set(storeId - 1, List.of());
+        // The store's partial starts empty at the first day left to simulate.
+        salesAtCheckpoint[storeId - 1] = 0L;
+        periodsAtCheckpoint[storeId - 1] = topKReport != null ? topKReport.periodCount(storeId) : 0;
+        return next;
+    }
+
+    /**
+     * Queues the store's days [fromDay, toDay), which end at a {@link #due}
+     * day. Called from the thread simulating the store; {@code dayFlags} holds
+     * the customer flags of those days, or is null without a customer summary.
+     */
+    public void record(
+            int storeId,
+            int fromDay,
+            int toDay,
+            Aggregator store,
+            StoreInventory inventory,
+            StoreTopKReport topKReport,
+            byte[][] dayFlags
+    ) {
+        checkWriter();
+        int days = toDay - fromDay;
+        int[] customers = new int[days];
+        long[] items = new long[days];
+        long[] skuRows = new long[days * skuCount];
+        store.copyDays(fromDay, toDay, customers, items, skuRows);
+        long salesCents = store.salesCents() - salesAtCheckpoint[storeId - 1];
+        salesAtCheckpoint[storeId - 1] = store.salesCents();
+
+        int[] itemsLeft = new int[skuCount];
+        int[] caseOrder = new int[skuCount];
+        int[] belowTarget = inventory.copyState(itemsLeft, caseOrder);
+
+        List<StoreTopKReport.Period> periods = null;
+        if (topKReport != null) {
+            periods = topKReport.periodsSince(storeId, periodsAtCheckpoint[storeId - 1]);
+            periodsAtCheckpoint[storeId - 1] += periods.size();
+        }
+        byte[][] flags = dayFlags != null ? Arrays.copyOf(dayFlags, days) : null;
+        enqueue(new Interval(storeId, fromDay, toDay, salesCents, customers, items, skuRows,
+                itemsLeft, caseOrder, belowTarget, periods, flags));
+    }
+
+    private void enqueue(Interval interval) {
+        try {
+            queue.put(interval);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a checkpoint", e);
+        }
+    }
+
+    private void checkWriter() {
+        if (failure != null) {
+            throw new IllegalStateException("Checkpoint writer failed", failure);
+        }
+    }
+
+    /** Checks the header, files every intact record by store and cuts off a torn tail. */
+    private void readRecords(String key) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (bytes.length < 8 || header.readInt() != MAGIC) {
+            throw new IOException(path + " is not a checkpoint log");
+        }
+        int version = header.readInt();
+        if (version != VERSION) {
+            throw new IOException(path + " has version " + version + ", expected " + VERSION);
+        }
+        String written = header.readUTF();
+        if (!written.equals(key)) {
+            throw new IOException(path + " was written for\n  " + written + "\nnot\n  " + key);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int pos = bytes.length - header.available();
+        int records = 0;
+        CRC32C crc = new CRC32C();
+        while (pos + 8 <= bytes.length) {
+            int length = buf.getInt(pos);
+            int expected = buf.getInt(pos + 4);
+            if (length <= 0 || length > bytes.length - pos - 8) break;
+            crc.reset();
+            crc.update(bytes, pos + 8, length);
+            if ((int) crc.getValue() != expected) break;
+            byte[] payload = Arrays.copyOfRange(bytes, pos + 8, pos + 8 + length);
+            int storeId = StateIO.readVarInt(new DataInputStream(new ByteArrayInputStream(payload)));
+            if (storeId < 1 || storeId > restored.size()) {
+                throw new IOException("Checkpoint record of store " + storeId + " in a run of "
+                        + restored.size() + " stores");
+            }
+            restored.get(storeId - 1).add(payload);
+            pos += 8 + length;
+            records++;
+        }
+        if (pos < bytes.length) {
+            System.out.println("Dropping " + (bytes.length - pos) + " bytes of a torn checkpoint record");
+            channel.truncate(pos);
+        }
+        channel.position(pos);
+        System.out.println("Resuming from " + records + " checkpoint records in " + path);
+    }
+
+    private void drain() {
+        List<Interval> batch = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        CRC32C crc = new CRC32C();
+        try {
+            boolean done = false;
+            while (!done) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                for (Interval interval : batch) {
+                    if (interval == END) {
+                        done = true;
+                        break;
+                    }
+                    bytes.reset();
+                    write(interval, out);
+                    byte[] payload = bytes.toByteArray();
+                    crc.reset();
+                    crc.update(payload);
+                    ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+                    frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+                    writeFully(frame);
+                }
+                channel.force(false);
+                batch.clear();
+            }
+        } catch (Throwable t) {
+            failure = t;
+            // Keep taking records so a blocked store thread sees the failure.
+            try {
+                while (queue.take() != END) {
+                    // discard
+                }
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void write(Interval interval, DataOutputStream out) throws IOException {
+        int days = interval.toDay() - interval.fromDay();
+        StateIO.writeVarInt(out, interval.storeId());
+        StateIO.writeVarInt(out, interval.fromDay());
+        StateIO.writeVarInt(out, interval.toDay());
+        StateIO.writeVarLong(out, interval.salesCents());
+        for (int d = 0; d < days; d++) StateIO.writeVarInt(out, interval.customers()[d]);
+        for (int d = 0; d < days; d++) StateIO.writeVarLong(out, interval.items()[d]);
+        StateIO.writeSparse(out, interval.skuRows());
+        StoreInventory.writeState(out, interval.itemsLeft(), interval.caseOrder(),
+                interval.belowTarget(), interval.belowTarget().length);
+        out.writeBoolean(interval.periods() != null);
+        if (interval.periods() != null) {
+            StoreTopKReport.writePeriods(out, interval.periods());
+        }
+        out.writeBoolean(interval.flags() != null);
+        if (interval.flags() != null) {
+            for (byte[] flags : interval.flags()) {
+                StateIO.writeVarInt(out, flags.length);
+                out.write(flags);
+            }
+        }
+        out.flush();
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /** Waits for the queued checkpoints to reach the disk and closes the log; it stays for a later resume. */
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            enqueue(END);
+            writer.join();
+            checkWriter();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the checkpoint writer", e);
+        }
+    }
+}
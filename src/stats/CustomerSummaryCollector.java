@@ -1,38 +1,365 @@
 package stats;
 
+import config.Scenario;
+import config.SimulationConfig;
+
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
-
-public class CustomerSummaryCollector {
-
-    private final Map<String, CustomerSummary> map = new HashMap<>();
-
-    public void mark(String key, CustomerSummary summary) {
-        map.putIfAbsent(key, summary);
-    }
-
-    public void export(Path path) throws IOException {
-        try (BufferedWriter w = Files.newBufferedWriter(path)) {
-            w.write("date,storeId,customerId,boughtMilk,boughtCereal,boughtBabyFood,boughtDiapers,boughtBread,boughtPB,boughtJam\n");
-            for (CustomerSummary s : map.values()) {
-                w.write(String.format(
-                        "%s,%d,%d,%d,%d,%d,%d,%d,%d,%d\n",
-                        s.date,
-                        s.storeId,
-                        s.customerId,
-                        s.boughtMilk ? 1 : 0,
-                        s.boughtCereal ? 1 : 0,
-                        s.boughtBabyFood ? 1 : 0,
-                        s.boughtDiapers ? 1 : 0,
-                        s.boughtBread ? 1 : 0,
-                        s.boughtPB ? 1 : 0,
-                        s.boughtJam ? 1 : 0
-                ));
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Which special item types each customer bought, packed as one byte of flags
+ * per customer. Rows are streamed to a CSV file ordered by date, store and
+ * customer: once every store has finished a date, that date's flags are handed
+ * to a writer thread and released, so only the dates some store is still
+ * behind on stay in memory. The same rows can be fed to a
+ * {@link ToSQLite.BulkLoader} instead of, or as well as, the CSV. Stores write
+ * disjoint slots, so concurrent stores can share one collector.
+ * <p>
+ * The writer thread does all encoding, file writes and SQLite inserts, so a
+ * store thread only takes the collector's lock to mark its day done and queue
+ * the dates that completes. The queue holds at most
+ * {@link SimulationConfig#SANITY_CHECK_QUEUE_DAYS} dates; stores that outrun
+ * the writer by more wait for it.
+ * <p>
+ * A collector may cover only a range of stores; {@link #mergeParts} joins the
+ * files of collectors over consecutive ranges into the file one collector over
+ * all stores would have written.
+ */
+public class CustomerSummaryCollector implements Closeable {
+
+    public static final int MILK = 1;
+    public static final int CEREAL = 1 << 1;
+    public static final int BABY_FOOD = 1 << 2;
+    public static final int DIAPERS = 1 << 3;
+    public static final int BREAD = 1 << 4;
+    public static final int PEANUT_BUTTER = 1 << 5;
+    public static final int JAM = 1 << 6;
+
+    /** The flag recorded for buying {@code type}, or 0 for a type without a column. */
+    public static int flagOf(String type) {
+        return switch (type) {
+            case SimulationConfig.TYPE_MILK -> MILK;
+            case SimulationConfig.TYPE_CEREAL -> CEREAL;
+            case SimulationConfig.TYPE_BABY_FOOD -> BABY_FOOD;
+            case SimulationConfig.TYPE_DIAPERS -> DIAPERS;
+            case SimulationConfig.TYPE_BREAD -> BREAD;
+            case SimulationConfig.TYPE_PEANUT_BUTTER -> PEANUT_BUTTER;
+            case SimulationConfig.TYPE_JELLY_JAM -> JAM;
+            default -> 0;
+        };
+    }
+
+    private static final byte[] HEADER = (
+            "date,storeId,customerId,boughtMilk,boughtCereal,boughtBabyFood,"
+                    + "boughtDiapers,boughtBread,boughtPB,boughtJam\n"
+    ).getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_BYTES = 4 << 20;
+    private static final int MAX_ROW_BYTES = 64;
+
+    // One date's flags, indexed by store - firstStore (null for a store without the day).
+    private record Day(int dayIndex, byte[][] stores) {}
+
+    private static final Day END = new Day(-1, null);
+
+    private final LocalDate startDate;
+    private final int firstStore;
+    private final int lastStore;
+    private final int dayCount;
+
+    // Flags per store-day, allocated when the day starts and dropped once written.
+    private final byte[][] flags;
+    private final int[] daysCompleted;
+    private int nextDayToWrite;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final ToSQLite.BulkLoader database;
+    private final BlockingQueue<Day> queue;
+    private final Thread writer;
+    private volatile Throwable failure;
+
+    public CustomerSummaryCollector(Path path) throws IOException {
+        this(path, null);
+    }
+
+    /** Either destination may be null, but not both. */
+    public CustomerSummaryCollector(Path path, ToSQLite.BulkLoader database) throws IOException {
+        this(path, database, Scenario.defaults());
+    }
+
+    public CustomerSummaryCollector(Path path, ToSQLite.BulkLoader database, Scenario scenario) throws IOException {
+        this(path, database, scenario.storeCount(), scenario.startDate(), scenario.dayCount());
+    }
+
+    public CustomerSummaryCollector(
+            Path path,
+            ToSQLite.BulkLoader database,
+            int storeCount,
+            LocalDate startDate,
+            int dayCount
+    ) throws IOException {
+        this(path, database, 1, storeCount, startDate, dayCount);
+    }
+
+    /** Collects stores firstStore..lastStore only. */
+    public CustomerSummaryCollector(
+            Path path,
+            ToSQLite.BulkLoader database,
+            int firstStore,
+            int lastStore,
+            LocalDate startDate,
+            int dayCount
+    ) throws IOException {
+        if (path == null && database == null) {
+            throw new IllegalArgumentException("No destination for the customer summary");
+        }
+        if (firstStore < 1 || lastStore < firstStore) {
+            throw new IllegalArgumentException("Bad store range: " + firstStore + ".." + lastStore);
+        }
+        this.startDate = startDate;
+        this.firstStore = firstStore;
+        this.lastStore = lastStore;
+        this.dayCount = dayCount;
+        int storeCount = lastStore - firstStore + 1;
+        this.flags = new byte[storeCount * dayCount][];
+        this.daysCompleted = new int[storeCount];
+        this.database = database;
+        if (path != null) {
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            buffer.put(HEADER);
+        } else {
+            this.channel = null;
+            this.buffer = null;
+        }
+        this.queue = new ArrayBlockingQueue<>(SimulationConfig.SANITY_CHECK_QUEUE_DAYS);
+        this.writer = new Thread(this::drain, "customer-summary-writer");
+        // A run that dies before close() must still exit.
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void beginDay(int storeId, int dayIndex, int customers) {
+        flags[storeDay(storeId, dayIndex)] = new byte[customers];
+    }
+
+    /** Records the flags of a customer; customerId is 1-based as in the simulation. */
+    public void record(int storeId, int dayIndex, int customerId, int customerFlags) {
+        flags[storeDay(storeId, dayIndex)][customerId - 1] = (byte) customerFlags;
+    }
+
+    /** Marks the store-day complete and queues every date all stores have finished. */
+    public synchronized void endDay(int storeId, int dayIndex) throws IOException {
+        checkWriter();
+        daysCompleted[storeId - firstStore] = dayIndex + 1;
+        int ready = dayCount;
+        for (int done : daysCompleted) ready = Math.min(ready, done);
+        // Queued under the lock so dates reach the writer in order.
+        while (nextDayToWrite < ready) {
+            enqueue(takeDay(nextDayToWrite++));
+        }
+    }
+
+    /**
+     * The flags recorded so far for the store-day; valid from beginDay until
+     * endDay, and not changed after it.
+     */
+    public byte[] dayFlags(int storeId, int dayIndex) {
+        return flags[storeDay(storeId, dayIndex)];
+    }
+
+    /** Records a whole store-day saved by an earlier run, as beginDay, record and endDay would. */
+    public void restoreDay(int storeId, int dayIndex, byte[] dayFlags) throws IOException {
+        flags[storeDay(storeId, dayIndex)] = dayFlags;
+        endDay(storeId, dayIndex);
+    }
+
+    private int storeDay(int storeId, int dayIndex) {
+        return (storeId - firstStore) * dayCount + dayIndex;
+    }
+
+    /** Moves the date's flags out of the collector. */
+    private Day takeDay(int dayIndex) {
+        byte[][] stores = new byte[lastStore - firstStore + 1][];
+        for (int storeId = firstStore; storeId <= lastStore; storeId++) {
+            int sd = storeDay(storeId, dayIndex);
+            stores[storeId - firstStore] = flags[sd];
+            flags[sd] = null;
+        }
+        return new Day(dayIndex, stores);
+    }
+
+    private void enqueue(Day day) throws IOException {
+        try {
+            queue.put(day);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing the customer summary");
+        }
+    }
+
+    private void checkWriter() throws IOException {
+        if (failure != null) {
+            throw new IOException("Customer summary writer failed", failure);
+        }
+    }
+
+    private void drain() {
+        try {
+            for (Day day = queue.take(); day != END; day = queue.take()) {
+                writeDay(day);
+            }
+            if (channel != null) flush();
+        } catch (Throwable t) {
+            failure = t;
+            // Keep taking dates so a blocked store thread sees the failure.
+            try {
+                while (queue.take() != END) {
+                    // discard
+                }
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void writeDay(Day day) throws IOException {
+        String dateString = startDate.plusDays(day.dayIndex()).toString();
+        byte[] date = dateString.getBytes(StandardCharsets.US_ASCII);
+        for (int storeId = firstStore; storeId <= lastStore; storeId++) {
+            byte[] dayFlags = day.stores()[storeId - firstStore];
+            if (dayFlags == null) continue;
+            if (database != null) {
+                try {
+                    for (int c = 0; c < dayFlags.length; c++) {
+                        database.add(dateString, storeId, c + 1, dayFlags[c]);
+                    }
+                } catch (SQLException e) {
+                    throw new IOException("Could not load customer summary into SQLite", e);
+                }
+            }
+            if (channel == null) continue;
+            for (int c = 0; c < dayFlags.length; c++) {
+                if (buffer.remaining() < MAX_ROW_BYTES) flush();
+                int f = dayFlags[c];
+                buffer.put(date);
+                buffer.put((byte) ',');
+                putInt(storeId);
+                buffer.put((byte) ',');
+                putInt(c + 1);
+                for (int bit = 0; bit < 7; bit++) {
+                    buffer.put((byte) ',');
+                    buffer.put((byte) ('0' + ((f >> bit) & 1)));
+                }
+                buffer.put((byte) '\n');
+            }
+        }
+    }
+
+    private void putInt(int v) {
+        if (v < 10) {
+            buffer.put((byte) ('0' + v));
+            return;
+        }
+        int digits = 0;
+        for (int t = v; t > 0; t /= 10) digits++;
+        int end = buffer.position() + digits;
+        for (int p = end - 1; p >= end - digits; p--) {
+            buffer.put(p, (byte) ('0' + v % 10));
+            v /= 10;
+        }
+        buffer.position(end);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes any dates not yet written (even if some store stopped early), waits
+     * for the writer, then closes the file and the database loader.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            while (nextDayToWrite < dayCount) {
+                enqueue(takeDay(nextDayToWrite++));
+            }
+            enqueue(END);
+            writer.join();
+            checkWriter();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the customer summary writer");
+        } finally {
+            if (channel != null) channel.close();
+            if (database != null) {
+                try {
+                    database.close();
+                } catch (SQLException e) {
+                    throw new IOException("Could not finish the SQLite load", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Joins files written by collectors over consecutive store ranges, given in
+     * store order, into one file in date, store and customer order.
+     */
+    public static void mergeParts(List<Path> parts, Path path) throws IOException {
+        List<BufferedReader> readers = new ArrayList<>();
+        try (BufferedWriter w = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            String[] pending = new String[parts.size()];
+            for (int p = 0; p < parts.size(); p++) {
+                BufferedReader r = Files.newBufferedReader(parts.get(p), StandardCharsets.US_ASCII);
+                readers.add(r);
+                r.readLine(); // header
+                pending[p] = r.readLine();
+            }
+            w.write(new String(HEADER, StandardCharsets.US_ASCII));
+            while (true) {
+                // Every part is in date order, so the smallest pending date is the next one.
+                String date = null;
+                for (String line : pending) {
+                    if (line == null) continue;
+                    String d = line.substring(0, line.indexOf(','));
+                    if (date == null || d.compareTo(date) < 0) date = d;
+                }
+                if (date == null) break;
+                for (int p = 0; p < pending.length; p++) {
+                    while (pending[p] != null && pending[p].startsWith(date)
+                            && pending[p].charAt(date.length()) == ',') {
+                        w.write(pending[p]);
+                        w.write('\n');
+                        pending[p] = readers.get(p).readLine();
+                    }
+                }
             }
+        } finally {
+            for (BufferedReader r : readers) r.close();
         }
     }
 }
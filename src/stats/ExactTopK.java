@@ -0,0 +1,45 @@
+package stats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exact tracker: one counter per SKU, plus the list of SKUs sold this period
+ * so that {@link #top} and {@link #reset} only visit those.
+ */
+public final class ExactTopK implements TopKTracker {
+
+    private final long[] counts;
+    private final int[] touched;
+    private int touchedCount;
+
+    public ExactTopK(int skuCount) {
+        this.counts = new long[skuCount];
+        this.touched = new int[skuCount];
+    }
+
+    @Override
+    public void add(int skuIndex) {
+        if (counts[skuIndex]++ == 0) {
+            touched[touchedCount++] = skuIndex;
+        }
+    }
+
+    @Override
+    public List<Entry> top(int k) {
+        int[] best = TopK.largest(counts, touched, touchedCount, k);
+        List<Entry> result = new ArrayList<>(best.length);
+        for (int i : best) {
+            result.add(new Entry(i, counts[i], 0L));
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for (int n = 0; n < touchedCount; n++) {
+            counts[touched[n]] = 0;
+        }
+        touchedCount = 0;
+    }
+}
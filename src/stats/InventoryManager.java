@@ -1,63 +1,98 @@
 package stats;
 
 
-import model.Product;
+import config.SimulationConfig;
 import model.ProductCatalog;
+import model.ProductColumns;
 
 import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.net.Inet4Address;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.LocalDate;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
+/**
+ * Inventory of all stores. Each store owns a {@link StoreInventory} partition;
+ * the SKU queries and {@link #experJson} report totals across stores.
+ */
 public class InventoryManager {
     int IEMS_PER_CASE=12;
     private final ProductCatalog catalog;
+    private final ProductColumns columns;
+    private final StoreInventory[] stores;
     public InventoryManager(ProductCatalog productCatalog) {
-        this.catalog = productCatalog;
-        initalInventory();
+        this(productCatalog, SimulationConfig.STORE_COUNT);
     }
-    private final Map<Integer,Integer> itemsLeft=new HashMap<>();
-    private final Map<Integer,Integer> caseOrder=new HashMap<>();
+    public InventoryManager(ProductCatalog productCatalog, int storeCount) {
+        this.catalog = productCatalog;
+        this.columns = productCatalog.columns();
 
-    private void initalInventory() {
-        for(int sku:catalog.allSkus()) {
-            Product p=catalog.productsBySku().get(sku);
-            int Items;
-            if(p!=null&&p.type().equals("Milk")){
-                Items=(int) Math.ceil(1.5*100);
+        int milkType=columns.typeOrdinalOf(SimulationConfig.TYPE_MILK);
+        int[] targetLevels=new int[columns.size()];
+        for(int i=0;i<columns.size();i++){
+            if(columns.typeOrdinal(i)==milkType){
+                targetLevels[i]=(int) Math.ceil(1.5*100);
             }else{
-                Items=3*100;
+                targetLevels[i]=3*100;
             }
+        }
+        int[] positionInType=new int[columns.size()];
+        for(int t=0;t<columns.typeCount();t++){
+            for(int k=0;k<columns.typeSize(t);k++){
+                positionInType[columns.indexOfType(t,k)]=k;
+            }
+        }
 
-            itemsLeft.put(sku,Items);
-
-            int initialCases=(int) Math.ceil(Items/(double)IEMS_PER_CASE);
-            caseOrder.put(sku,initialCases);
+        this.stores=new StoreInventory[storeCount];
+        for(int s=0;s<stores.length;s++){
+            stores[s]=new StoreInventory(columns,IEMS_PER_CASE,targetLevels,positionInType);
         }
+    }
 
+    /** Partition of the given store (1-based, as in the simulation). */
+    public StoreInventory store(int storeId){
+        return stores[storeId-1];
     }
-    public boolean inStock(int sku) {
-        return itemsLeft.getOrDefault(sku,0)>0;
+    public int storeCount(){
+        return stores.length;
     }
-
-    public int sell(int sku){
-        int Left=itemsLeft.getOrDefault(sku,0);
-        if(Left>0){
-            Left--;
-            itemsLeft.put(sku,Left);
+    /** Writes the partitions of stores firstStore..lastStore, for {@link #readStores}. */
+    public void writeStores(DataOutput out,int firstStore,int lastStore) throws IOException {
+        out.writeInt(firstStore);
+        out.writeInt(lastStore);
+        out.writeInt(columns.size());
+        for(int s=firstStore;s<=lastStore;s++){
+            store(s).writeState(out);
         }
-        return Left;
+    }
+    /** Replaces the partitions written by {@link #writeStores}; returns the first and last store. */
+    public int[] readStores(DataInput in) throws IOException {
+        int firstStore=in.readInt();
+        int lastStore=in.readInt();
+        int skus=in.readInt();
+        if(firstStore<1||lastStore>stores.length||firstStore>lastStore||skus!=columns.size()){
+            throw new IOException("Inventory of stores "+firstStore+".."+lastStore+" over "+skus
+                    +" SKUs does not fit "+stores.length+" stores over "+columns.size());
+        }
+        for(int s=firstStore;s<=lastStore;s++){
+            store(s).readState(in);
+        }
+        return new int[]{firstStore,lastStore};
     }
     public int getItemsLeft(int sku){
-        return itemsLeft.getOrDefault(sku,0);
+        int i=columns.indexOf(sku);
+        if(i<0) return 0;
+        int total=0;
+        for(StoreInventory s:stores) total+=s.itemsLeftAt(i);
+        return total;
     }
     public int getCaseOrder(int sku){
-        return caseOrder.getOrDefault(sku,0);
+        int i=columns.indexOf(sku);
+        if(i<0) return 0;
+        int total=0;
+        for(StoreInventory s:stores) total+=s.caseOrderAt(i);
+        return total;
     }
 
     public void experJson(Path path) throws Exception {
@@ -65,15 +100,19 @@ public class InventoryManager {
             w.write("[\n");
 
             boolean first=true;
-            for(int sku:catalog.allSkus()){
+            for(int i=0;i<columns.size();i++){
                 if(!first){
                     w.write(",\n");
                 }
                 first=false;
-                int inventory=itemsLeft.getOrDefault(sku,0);
-                int cases=caseOrder.getOrDefault(sku,0);
+                int inventory=0;
+                int cases=0;
+                for(StoreInventory s:stores){
+                    inventory+=s.itemsLeftAt(i);
+                    cases+=s.caseOrderAt(i);
+                }
                 w.write(" {\n");
-                w.write(" \"sku\": "+sku+",\n");
+                w.write(" \"sku\": "+columns.sku(i)+",\n");
                 w.write("\"inventory\": "+inventory+",\n");
                 w.write("\"caseOrdered\": "+cases+"\n");
                 w.write("}");
@@ -81,25 +120,4 @@ public class InventoryManager {
             w.write("\n]");
         }
     }
-    public void processDelivery(LocalDate date){
-        for(int sku:catalog.allSkus()){
-            Product p=catalog.productsBySku().get(sku);
-            int currItems=itemsLeft.getOrDefault(sku,0);
-            int targetItems;
-            if(p!=null&&p.type().equals("Milk")){
-                targetItems=(int)Math.ceil(1.5*100);
-            }else {
-                targetItems=3*100;
-            }
-            if(currItems<targetItems){
-                int need=targetItems-currItems;
-                int cases=(int) Math.ceil(need/(double)IEMS_PER_CASE);
-                int itemsAdded=cases*IEMS_PER_CASE;
-                itemsLeft.put(sku,currItems+itemsAdded);
-                int totalCases=caseOrder.getOrDefault(sku,0);
-                caseOrder.put(sku,totalCases+cases);
-
-            }
-        }
-    }
 }
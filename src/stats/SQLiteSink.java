@@ -0,0 +1,335 @@
+package stats;
+
+import config.Scenario;
+import config.SimulationConfig;
+import model.Product;
+import model.ProductCatalog;
+import model.ProductColumns;
+
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Persists every store-day into SQLite: customers, per-SKU sales and the
+ * inventory levels and cumulative case orders. Inventory is a snapshot at the
+ * end of every {@code inventoryDays}-th day and of the last day: the first
+ * holds every SKU, later ones only the SKUs whose level or case order changed
+ * since the store's previous snapshot, so a SKU's level at a snapshot is its
+ * latest daily_inventory row on or before that date.
+ * <p>
+ * {@link #storeDay} only copies the day's sales and inventory changes out of
+ * the store's aggregator and inventory, and queues them; a single writer
+ * thread owns the connection and inserts the queued days with batched
+ * prepared statements. The queue is bounded, so a simulation that outruns the
+ * writer by more than {@link SimulationConfig#DATABASE_QUEUE_DAYS} store-days
+ * waits for it instead of buffering the year. Indexes are built on
+ * {@link #close}; a run that failed calls {@link #abort} instead, which drops
+ * the partial tables.
+ */
+public final class SQLiteSink implements AutoCloseable {
+
+    // sold holds (SKU index, count) pairs and changed holds (SKU index, items
+    // left, cases ordered) triples, for the SKUs that sold or changed only.
+    private record StoreDay(
+            int storeId,
+            int dayIndex,
+            int customers,
+            int[] sold,
+            int[] changed
+    ) {}
+
+    private static final StoreDay END = new StoreDay(0, 0, 0, null, null);
+
+    private final ProductColumns columns;
+    private final LocalDate startDate;
+    private final int dayCount;
+    private final int inventoryDays;
+    // Inventory of each store as last queued, -1 before its first day; each
+    // store's slot is touched by its thread only.
+    private final int[][] queuedItemsLeft;
+    private final int[][] queuedCaseOrder;
+    private final BlockingQueue<StoreDay> queue;
+    private final Thread writer;
+    private final Connection conn;
+    private volatile Throwable failure;
+    // Set by abort(): the writer discards what is still queued.
+    private volatile boolean aborted;
+
+    public SQLiteSink(Path dbPath, ProductCatalog catalog) throws SQLException {
+        this(dbPath, catalog, Scenario.defaults(),
+                SimulationConfig.DATABASE_QUEUE_DAYS, SimulationConfig.DATABASE_INVENTORY_DAYS);
+    }
+
+    public SQLiteSink(
+            Path dbPath,
+            ProductCatalog catalog,
+            Scenario scenario,
+            int queueDays,
+            int inventoryDays
+    ) throws SQLException {
+        if (inventoryDays <= 0) {
+            throw new IllegalArgumentException("inventoryDays must be positive: " + inventoryDays);
+        }
+        this.columns = catalog.columns();
+        this.startDate = scenario.startDate();
+        this.dayCount = scenario.dayCount();
+        this.inventoryDays = inventoryDays;
+        this.queuedItemsLeft = new int[scenario.storeCount()][columns.size()];
+        this.queuedCaseOrder = new int[scenario.storeCount()][columns.size()];
+        for (int s = 0; s < scenario.storeCount(); s++) {
+            Arrays.fill(queuedItemsLeft[s], -1);
+            Arrays.fill(queuedCaseOrder[s], -1);
+        }
+        this.queue = new ArrayBlockingQueue<>(queueDays);
+        this.conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath.toAbsolutePath());
+        try {
+            ToSQLite.applyPragmas(conn);
+            createTables(conn);
+            conn.setAutoCommit(false);
+            insertProducts(catalog);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        this.writer = new Thread(this::drain, "sqlite-sink");
+        // A run that dies before close() or abort() must still exit.
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private static void createTables(Connection conn) throws SQLException {
+        String ddl = """
+            DROP TABLE IF EXISTS daily_inventory;
+            DROP TABLE IF EXISTS daily_sku_counts;
+            DROP TABLE IF EXISTS daily_customers;
+            DROP TABLE IF EXISTS products;
+            CREATE TABLE products (
+              sku INTEGER PRIMARY KEY,
+              name TEXT,
+              type TEXT
+            );
+            CREATE TABLE daily_customers (
+              date TEXT,
+              storeId INTEGER,
+              customers INTEGER,
+              PRIMARY KEY (date, storeId)
+            );
+            CREATE TABLE daily_sku_counts (
+              date TEXT,
+              storeId INTEGER,
+              sku INTEGER REFERENCES products (sku),
+              count INTEGER
+            );
+            CREATE TABLE daily_inventory (
+              date TEXT,
+              storeId INTEGER,
+              sku INTEGER REFERENCES products (sku),
+              itemsLeft INTEGER,
+              casesOrdered INTEGER
+            );
+            """;
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate(ddl);
+        }
+    }
+
+    private static void createIndexes(Connection conn) throws SQLException {
+        String ddl = """
+            CREATE INDEX daily_sku_counts_date_store ON daily_sku_counts (date, storeId);
+            CREATE INDEX daily_sku_counts_sku ON daily_sku_counts (sku, date);
+            CREATE INDEX daily_inventory_date_store ON daily_inventory (date, storeId);
+            CREATE INDEX daily_inventory_sku ON daily_inventory (sku, date);
+            """;
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate(ddl);
+        }
+    }
+
+    private void insertProducts(ProductCatalog catalog) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO products VALUES (?, ?, ?)")) {
+            for (int i = 0; i < columns.size(); i++) {
+                Product p = catalog.productsBySku().get(columns.sku(i));
+                ps.setInt(1, columns.sku(i));
+                ps.setString(2, p != null ? p.name() : null);
+                ps.setString(3, columns.typeName(columns.typeOrdinal(i)));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Queues the finished day of one store. Called from the thread simulating
+     * that store, after the day's last customer.
+     */
+    public void storeDay(int storeId, int dayIndex, Aggregator store, StoreInventory inventory) {
+        checkWriter();
+        int[] itemsLeft = queuedItemsLeft[storeId - 1];
+        int[] caseOrder = queuedCaseOrder[storeId - 1];
+        boolean snapshot = (dayIndex + 1) % inventoryDays == 0 || dayIndex == dayCount - 1;
+        // Counted first, so each array is allocated at its exact size.
+        int soldCount = 0;
+        int changedCount = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            if (store.dailySkuCountAt(dayIndex, i) > 0) soldCount++;
+            if (snapshot && (inventory.itemsLeftAt(i) != itemsLeft[i] || inventory.caseOrderAt(i) != caseOrder[i])) {
+                changedCount++;
+            }
+        }
+        int[] sold = new int[soldCount * 2];
+        int[] changed = new int[changedCount * 3];
+        int s = 0;
+        int c = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            long count = store.dailySkuCountAt(dayIndex, i);
+            if (count > 0) {
+                sold[s++] = i;
+                sold[s++] = (int) count;
+            }
+            if (snapshot && (inventory.itemsLeftAt(i) != itemsLeft[i] || inventory.caseOrderAt(i) != caseOrder[i])) {
+                itemsLeft[i] = inventory.itemsLeftAt(i);
+                caseOrder[i] = inventory.caseOrderAt(i);
+                changed[c++] = i;
+                changed[c++] = itemsLeft[i];
+                changed[c++] = caseOrder[i];
+            }
+        }
+        enqueue(new StoreDay(storeId, dayIndex, store.dailyCustomersAt(dayIndex), sold, changed));
+    }
+
+    private void enqueue(StoreDay day) {
+        try {
+            queue.put(day);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a store-day", e);
+        }
+    }
+
+    private void checkWriter() {
+        if (failure != null) {
+            throw new IllegalStateException("SQLite writer failed", failure);
+        }
+    }
+
+    private void drain() {
+        List<StoreDay> batch = new ArrayList<>();
+        try (PreparedStatement customers = conn.prepareStatement(
+                     "INSERT INTO daily_customers VALUES (?, ?, ?)");
+             PreparedStatement counts = conn.prepareStatement(
+                     "INSERT INTO daily_sku_counts VALUES (?, ?, ?, ?)");
+             PreparedStatement levels = conn.prepareStatement(
+                     "INSERT INTO daily_inventory VALUES (?, ?, ?, ?, ?)")) {
+            boolean done = false;
+            while (!done) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                for (StoreDay day : batch) {
+                    if (day == END) {
+                        done = true;
+                        break;
+                    }
+                    if (!aborted) {
+                        write(day, customers, counts, levels);
+                    }
+                }
+                customers.executeBatch();
+                counts.executeBatch();
+                levels.executeBatch();
+                conn.commit();
+                batch.clear();
+            }
+        } catch (Throwable t) {
+            failure = t;
+            // Keep taking days so a blocked store thread sees the failure.
+            try {
+                while (queue.take() != END) {
+                    // discard
+                }
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void write(
+            StoreDay day,
+            PreparedStatement customers,
+            PreparedStatement counts,
+            PreparedStatement levels
+    ) throws SQLException {
+        String date = startDate.plusDays(day.dayIndex()).toString();
+        customers.setString(1, date);
+        customers.setInt(2, day.storeId());
+        customers.setInt(3, day.customers());
+        customers.addBatch();
+
+        int[] sold = day.sold();
+        for (int k = 0; k < sold.length; k += 2) {
+            counts.setString(1, date);
+            counts.setInt(2, day.storeId());
+            counts.setInt(3, columns.sku(sold[k]));
+            counts.setInt(4, sold[k + 1]);
+            counts.addBatch();
+        }
+        int[] changed = day.changed();
+        for (int k = 0; k < changed.length; k += 3) {
+            levels.setString(1, date);
+            levels.setInt(2, day.storeId());
+            levels.setInt(3, columns.sku(changed[k]));
+            levels.setInt(4, changed[k + 1]);
+            levels.setInt(5, changed[k + 2]);
+            levels.addBatch();
+        }
+    }
+
+    /** Waits for the queued days to be written, builds the indexes and closes the database. */
+    @Override
+    public void close() throws SQLException {
+        try (conn) {
+            enqueue(END);
+            writer.join();
+            checkWriter();
+            createIndexes(conn);
+            conn.commit();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the SQLite writer", e);
+        }
+    }
+
+    /**
+     * Stops the writer of a run that failed and drops the store-day tables, so
+     * a half-written run is not mistaken for a complete one. Days are
+     * committed batch by batch (and the default journal mode cannot roll
+     * back), so dropping is the only way to undo them. Never throws, so it
+     * does not hide the failure that caused it.
+     */
+    public void abort() {
+        aborted = true;
+        try (conn) {
+            queue.clear();
+            enqueue(END);
+            writer.join();
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("""
+                    DROP TABLE IF EXISTS daily_inventory;
+                    DROP TABLE IF EXISTS daily_sku_counts;
+                    DROP TABLE IF EXISTS daily_customers;
+                    """);
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Could not discard the partial SQLite run: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
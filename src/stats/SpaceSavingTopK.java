@@ -0,0 +1,156 @@
+package stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Approximate tracker using Space-Saving (Metwally et al.): a fixed number of
+ * counters, where a sale of an untracked SKU takes over the smallest counter
+ * and inherits its count as the error bound. Memory depends only on the
+ * capacity, not on the catalog, and any SKU sold more than
+ * {@code total / capacity} times in the period is guaranteed to be tracked.
+ */
+public final class SpaceSavingTopK implements TopKTracker {
+
+    private final int capacity;
+    private final int[] items;
+    private final long[] counts;
+    private final long[] errors;
+    // Min-heap of slots by count; heapPos[slot] is the slot's heap position.
+    private final int[] heap;
+    private final int[] heapPos;
+    private int size;
+
+    // Open-addressing skuIndex -> slot + 1 (0 = empty), linear probing.
+    private final int[] table;
+    private final int mask;
+
+    public SpaceSavingTopK(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.items = new int[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.heap = new int[capacity];
+        this.heapPos = new int[capacity];
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+    }
+
+    @Override
+    public void add(int skuIndex) {
+        int slot = find(skuIndex);
+        if (slot < 0) {
+            if (size < capacity) {
+                slot = size;
+                items[slot] = skuIndex;
+                counts[slot] = 1;
+                errors[slot] = 0;
+                insert(slot);
+                heap[size] = slot;
+                siftUp(size++);
+                return;
+            }
+            slot = heap[0];
+            remove(items[slot]);
+            errors[slot] = counts[slot];
+            items[slot] = skuIndex;
+            insert(slot);
+        }
+        counts[slot]++;
+        siftDown(heapPos[slot]);
+    }
+
+    @Override
+    public List<Entry> top(int k) {
+        Integer[] slots = new Integer[size];
+        for (int s = 0; s < size; s++) slots[s] = s;
+        Arrays.sort(slots, Comparator.<Integer>comparingLong(s -> -counts[s])
+                .thenComparingInt(s -> items[s]));
+        List<Entry> result = new ArrayList<>(Math.min(k, size));
+        for (int r = 0; r < Math.min(k, size); r++) {
+            int s = slots[r];
+            result.add(new Entry(items[s], counts[s], errors[s]));
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    private int hash(int skuIndex) {
+        int h = skuIndex * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private int find(int skuIndex) {
+        int h = hash(skuIndex);
+        int entry;
+        while ((entry = table[h]) != 0) {
+            if (items[entry - 1] == skuIndex) return entry - 1;
+            h = (h + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(int slot) {
+        int h = hash(items[slot]);
+        while (table[h] != 0) h = (h + 1) & mask;
+        table[h] = slot + 1;
+    }
+
+    /** Deletes the key and shifts later entries of its probe run back into the gap. */
+    private void remove(int skuIndex) {
+        int i = hash(skuIndex);
+        while (items[table[i] - 1] != skuIndex) i = (i + 1) & mask;
+        table[i] = 0;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == 0) return;
+            int home = hash(items[table[j] - 1]);
+            boolean homeBetween = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!homeBetween) {
+                table[i] = table[j];
+                table[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    private void siftUp(int pos) {
+        int slot = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[slot]) break;
+            heap[pos] = heap[parent];
+            heapPos[heap[pos]] = pos;
+            pos = parent;
+        }
+        heap[pos] = slot;
+        heapPos[slot] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int slot = heap[pos];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) child++;
+            if (counts[slot] <= counts[heap[child]]) break;
+            heap[pos] = heap[child];
+            heapPos[heap[pos]] = pos;
+            pos = child;
+        }
+        heap[pos] = slot;
+        heapPos[slot] = pos;
+    }
+}
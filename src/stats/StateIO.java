@@ -0,0 +1,135 @@
+package stats;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Compact encodings of counter arrays for moving partial state between
+ * processes: unsigned LEB128 varints, and sparse arrays as (gap, value) pairs
+ * of their non-zero entries.
+ */
+final class StateIO {
+
+    private StateIO() {}
+
+    static void writeVarLong(DataOutput out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeVarInt(DataOutput out, int v) throws IOException {
+        writeVarLong(out, v & 0xFFFFFFFFL);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    /** Length, then every element as a varint. */
+    static void writeInts(DataOutput out, int[] values) throws IOException {
+        writeVarInt(out, values.length);
+        for (int v : values) writeVarInt(out, v);
+    }
+
+    static void readInts(DataInput in, int[] into) throws IOException {
+        checkLength(readVarInt(in), into.length);
+        for (int i = 0; i < into.length; i++) into[i] = readVarInt(in);
+    }
+
+    /**
+     * Length and non-zero count, then (gap from the previous non-zero index,
+     * value) pairs. The pairs are encoded into a local chunk and written a
+     * chunk at a time, since a byte-at-a-time DataOutput dominates the cost of
+     * large arrays.
+     */
+    static void writeSparse(DataOutput out, long[] values) throws IOException {
+        int nonZero = 0;
+        for (long v : values) if (v != 0) nonZero++;
+        writeVarInt(out, values.length);
+        writeVarInt(out, nonZero);
+        byte[] chunk = new byte[CHUNK_BYTES];
+        int n = 0;
+        int last = -1;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == 0) continue;
+            if (n > CHUNK_BYTES - MAX_PAIR_BYTES) {
+                out.write(chunk, 0, n);
+                n = 0;
+            }
+            n = putVarLong(chunk, n, i - last);
+            n = putVarLong(chunk, n, values[i]);
+            last = i;
+        }
+        out.write(chunk, 0, n);
+    }
+
+    private static final int CHUNK_BYTES = 8192;
+    // A gap (5 bytes) and a long (10 bytes) as varints.
+    private static final int MAX_PAIR_BYTES = 15;
+
+    private static int putVarLong(byte[] into, int pos, long v) {
+        while ((v & ~0x7FL) != 0) {
+            into[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        into[pos++] = (byte) v;
+        return pos;
+    }
+
+    /** Adds an array written by {@link #writeSparse} into {@code into}. */
+    static void addSparse(DataInput in, long[] into) throws IOException {
+        checkLength(readVarInt(in), into.length);
+        int nonZero = readVarInt(in);
+        int i = -1;
+        for (int n = 0; n < nonZero; n++) {
+            i += readVarInt(in);
+            if (i < 0 || i >= into.length) throw new IOException("Sparse index out of range: " + i);
+            into[i] += readVarLong(in);
+        }
+    }
+
+    static void addSparse(DataInput in, int[] into) throws IOException {
+        checkLength(readVarInt(in), into.length);
+        int nonZero = readVarInt(in);
+        int i = -1;
+        for (int n = 0; n < nonZero; n++) {
+            i += readVarInt(in);
+            if (i < 0 || i >= into.length) throw new IOException("Sparse index out of range: " + i);
+            into[i] += (int) readVarLong(in);
+        }
+    }
+
+    static void writeSparse(DataOutput out, int[] values) throws IOException {
+        int nonZero = 0;
+        for (int v : values) if (v != 0) nonZero++;
+        writeVarInt(out, values.length);
+        writeVarInt(out, nonZero);
+        int last = -1;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == 0) continue;
+            writeVarInt(out, i - last);
+            writeVarLong(out, values[i] & 0xFFFFFFFFL);
+            last = i;
+        }
+    }
+
+    private static void checkLength(int length, int expected) throws IOException {
+        if (length != expected) {
+            throw new IOException("Array length " + length + " does not match " + expected);
+        }
+    }
+}
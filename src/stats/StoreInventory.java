@@ -0,0 +1,160 @@
+package stats;
+
+
+import model.ProductColumns;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Stock and case-order ledger of a single store. Only the thread simulating
+ * that store touches it, so it needs no synchronization.
+ */
+public class StoreInventory {
+    private final int IEMS_PER_CASE;
+    private final ProductColumns columns;
+    StoreInventory(ProductColumns columns, int itemsPerCase, int[] targetLevels, int[] positionInType) {
+        this.columns = columns;
+        this.IEMS_PER_CASE = itemsPerCase;
+        this.targetLevels = targetLevels;
+        this.positionInType = positionInType;
+        this.itemsLeft = new int[columns.size()];
+        this.caseOrder = new int[columns.size()];
+        this.belowTarget = new int[columns.size()];
+        this.inStockByType = new BitSet[columns.typeCount()];
+        for(int t=0;t<columns.typeCount();t++){
+            inStockByType[t]=new BitSet(columns.typeSize(t));
+        }
+        initalInventory();
+    }
+    // Stock and case orders are indexed by the catalog's dense SKU index.
+    private final int[] itemsLeft;
+    private final int[] caseOrder;
+    // One bit per product of a type (in SKU order), set while it is in stock,
+    // so the first in-stock replacement is a nextSetBit call.
+    private final BitSet[] inStockByType;
+    private final int[] positionInType;
+    // Restock targets per SKU (shared by all stores), and the SKUs that sold
+    // below target since the last delivery; processDelivery() only visits those.
+    private final int[] targetLevels;
+    private final int[] belowTarget;
+    private int belowTargetCount;
+
+    private void initalInventory() {
+        for(int i=0;i<columns.size();i++) {
+            int Items=targetLevels[i];
+
+            setItemsLeft(i,Items);
+
+            int initialCases=(int) Math.ceil(Items/(double)IEMS_PER_CASE);
+            caseOrder[i]=initialCases;
+        }
+
+    }
+    private void setItemsLeft(int skuIndex,int items){
+        itemsLeft[skuIndex]=items;
+        inStockByType[columns.typeOrdinal(skuIndex)].set(positionInType[skuIndex],items>0);
+    }
+    public boolean inStock(int sku) {
+        int i=columns.indexOf(sku);
+        return i>=0&&inStockAt(i);
+    }
+    public boolean inStockAt(int skuIndex) {
+        return itemsLeft[skuIndex]>0;
+    }
+
+    public int sell(int sku){
+        int i=columns.indexOf(sku);
+        return i<0?0:sellAt(i);
+    }
+    public int sellAt(int skuIndex){
+        int Left=itemsLeft[skuIndex];
+        if(Left>0){
+            Left--;
+            setItemsLeft(skuIndex,Left);
+            // Deliveries leave every SKU at or above target, so stock crosses
+            // below it exactly once per delivery cycle.
+            if(Left==targetLevels[skuIndex]-1){
+                belowTarget[belowTargetCount++]=skuIndex;
+            }
+        }
+        return Left;
+    }
+    /** Index of the first in-stock product of the type (in SKU order), or -1. */
+    public int firstInStockOfType(int typeOrdinal){
+        int k=inStockByType[typeOrdinal].nextSetBit(0);
+        return k<0?-1:columns.indexOfType(typeOrdinal,k);
+    }
+    public int getItemsLeft(int sku){
+        int i=columns.indexOf(sku);
+        return i<0?0:itemsLeft[i];
+    }
+    public int getCaseOrder(int sku){
+        int i=columns.indexOf(sku);
+        return i<0?0:caseOrder[i];
+    }
+    int itemsLeftAt(int skuIndex){
+        return itemsLeft[skuIndex];
+    }
+    int caseOrderAt(int skuIndex){
+        return caseOrder[skuIndex];
+    }
+    void copyLevels(int[] itemsLeftOut,int[] caseOrderOut){
+        System.arraycopy(itemsLeft,0,itemsLeftOut,0,itemsLeft.length);
+        System.arraycopy(caseOrder,0,caseOrderOut,0,caseOrder.length);
+    }
+
+    /** Stock, case orders and pending restocks, for {@link #readState} in another process. */
+    void writeState(DataOutput out) throws IOException {
+        writeState(out,itemsLeft,caseOrder,belowTarget,belowTargetCount);
+    }
+    /** Same encoding as {@link #writeState(DataOutput)} for state copied by {@link #copyState}. */
+    static void writeState(DataOutput out,int[] itemsLeft,int[] caseOrder,int[] belowTarget,int belowTargetCount) throws IOException {
+        StateIO.writeInts(out,itemsLeft);
+        StateIO.writeInts(out,caseOrder);
+        StateIO.writeVarInt(out,belowTargetCount);
+        for(int n=0;n<belowTargetCount;n++){
+            StateIO.writeVarInt(out,belowTarget[n]);
+        }
+    }
+    /** Copies the levels and case orders into the arrays; returns the pending restocks. */
+    int[] copyState(int[] itemsLeftOut,int[] caseOrderOut){
+        copyLevels(itemsLeftOut,caseOrderOut);
+        return Arrays.copyOf(belowTarget,belowTargetCount);
+    }
+    void readState(DataInput in) throws IOException {
+        StateIO.readInts(in,itemsLeft);
+        StateIO.readInts(in,caseOrder);
+        for(int i=0;i<itemsLeft.length;i++){
+            setItemsLeft(i,itemsLeft[i]);
+        }
+        belowTargetCount=StateIO.readVarInt(in);
+        if(belowTargetCount<0||belowTargetCount>belowTarget.length){
+            throw new IOException("Bad restock count: "+belowTargetCount);
+        }
+        for(int n=0;n<belowTargetCount;n++){
+            belowTarget[n]=StateIO.readVarInt(in);
+        }
+    }
+
+    public void processDelivery(LocalDate date){
+        for(int n=0;n<belowTargetCount;n++){
+            int i=belowTarget[n];
+            int currItems=itemsLeft[i];
+            int targetItems=targetLevels[i];
+            if(currItems<targetItems){
+                int need=targetItems-currItems;
+                int cases=(int) Math.ceil(need/(double)IEMS_PER_CASE);
+                int itemsAdded=cases*IEMS_PER_CASE;
+                setItemsLeft(i,currItems+itemsAdded);
+                caseOrder[i]+=cases;
+
+            }
+        }
+        belowTargetCount=0;
+    }
+}
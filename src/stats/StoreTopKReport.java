@@ -0,0 +1,186 @@
+package stats;
+
+import config.Scenario;
+import config.SimulationConfig;
+import model.ProductCatalog;
+import model.ProductColumns;
+
+import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Top-K SKUs of every store in fixed periods (a week by default). Each store
+ * thread feeds its own {@link TopKTracker} and records it at the end of every
+ * period, so only the ranked entries are kept, never per-day counts.
+ */
+public final class StoreTopKReport {
+
+    record Period(int fromDay, int toDay, List<TopKTracker.Entry> entries) {}
+
+    private final ProductColumns columns;
+    private final LocalDate startDate;
+    private final int k;
+    private final int periodDays;
+    private final boolean approximate;
+    private final int capacity;
+    // One list per store, appended to only by that store's thread.
+    private final List<List<Period>> periods;
+
+    public StoreTopKReport(ProductCatalog catalog) {
+        this(catalog, Scenario.defaults());
+    }
+
+    public StoreTopKReport(ProductCatalog catalog, Scenario scenario) {
+        this(
+                catalog,
+                scenario.storeCount(),
+                scenario.startDate(),
+                SimulationConfig.STORE_TOP_K,
+                SimulationConfig.STORE_TOP_K_PERIOD_DAYS,
+                SimulationConfig.STORE_TOP_K_APPROXIMATE,
+                SimulationConfig.STORE_TOP_K_CAPACITY
+        );
+    }
+
+    public StoreTopKReport(
+            ProductCatalog catalog,
+            int storeCount,
+            LocalDate startDate,
+            int k,
+            int periodDays,
+            boolean approximate,
+            int capacity
+    ) {
+        if (periodDays <= 0) {
+            throw new IllegalArgumentException("periodDays must be positive: " + periodDays);
+        }
+        this.columns = catalog.columns();
+        this.startDate = startDate;
+        this.k = k;
+        this.periodDays = periodDays;
+        this.approximate = approximate;
+        this.capacity = capacity;
+        this.periods = new ArrayList<>(storeCount);
+        for (int s = 0; s < storeCount; s++) {
+            periods.add(new ArrayList<>());
+        }
+    }
+
+    public TopKTracker newTracker() {
+        return TopKTracker.create(columns.size(), approximate, capacity);
+    }
+
+    /** Whether {@code dayIndex} closes a period (the last simulated day always does). */
+    public boolean endsPeriod(int dayIndex, boolean lastDay) {
+        return lastDay || (dayIndex + 1) % periodDays == 0;
+    }
+
+    /** Records the period ending on {@code dayIndex} and resets the tracker. */
+    public void record(int storeId, int dayIndex, TopKTracker tracker) {
+        int fromDay = dayIndex - dayIndex % periodDays;
+        periods.get(storeId - 1).add(new Period(fromDay, dayIndex, tracker.top(k)));
+        tracker.reset();
+    }
+
+    /** Writes the periods of stores firstStore..lastStore, for {@link #readStores}. */
+    public void writeStores(DataOutput out, int firstStore, int lastStore) throws IOException {
+        out.writeInt(firstStore);
+        out.writeInt(lastStore);
+        for (int s = firstStore; s <= lastStore; s++) {
+            writePeriods(out, periods.get(s - 1));
+        }
+    }
+
+    /** Replaces the periods of the stores written by {@link #writeStores}. */
+    public void readStores(DataInput in) throws IOException {
+        int firstStore = in.readInt();
+        int lastStore = in.readInt();
+        if (firstStore < 1 || lastStore > periods.size() || firstStore > lastStore) {
+            throw new IOException("Top-K of stores " + firstStore + ".." + lastStore
+                    + " does not fit " + periods.size() + " stores");
+        }
+        for (int s = firstStore; s <= lastStore; s++) {
+            periods.set(s - 1, readPeriods(in));
+        }
+    }
+
+    public int periodDays() {
+        return periodDays;
+    }
+
+    /** Number of periods the store has recorded so far. */
+    int periodCount(int storeId) {
+        return periods.get(storeId - 1).size();
+    }
+
+    /** Copy of the store's periods from index {@code from} on; call it from the store's thread. */
+    List<Period> periodsSince(int storeId, int from) {
+        List<Period> list = periods.get(storeId - 1);
+        return List.copyOf(list.subList(from, list.size()));
+    }
+
+    /** Appends periods recorded by an earlier run of the store. */
+    void appendPeriods(int storeId, List<Period> restored) {
+        periods.get(storeId - 1).addAll(restored);
+    }
+
+    static void writePeriods(DataOutput out, List<Period> list) throws IOException {
+        StateIO.writeVarInt(out, list.size());
+        for (Period period : list) {
+            StateIO.writeVarInt(out, period.fromDay());
+            StateIO.writeVarInt(out, period.toDay());
+            StateIO.writeVarInt(out, period.entries().size());
+            for (TopKTracker.Entry e : period.entries()) {
+                StateIO.writeVarInt(out, e.skuIndex());
+                StateIO.writeVarLong(out, e.count());
+                StateIO.writeVarLong(out, e.maxError());
+            }
+        }
+    }
+
+    static List<Period> readPeriods(DataInput in) throws IOException {
+        int count = StateIO.readVarInt(in);
+        List<Period> list = new ArrayList<>(count);
+        for (int p = 0; p < count; p++) {
+            int fromDay = StateIO.readVarInt(in);
+            int toDay = StateIO.readVarInt(in);
+            int n = StateIO.readVarInt(in);
+            List<TopKTracker.Entry> entries = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                entries.add(new TopKTracker.Entry(
+                        StateIO.readVarInt(in), StateIO.readVarLong(in), StateIO.readVarLong(in)));
+            }
+            list.add(new Period(fromDay, toDay, entries));
+        }
+        return list;
+    }
+
+    public void export(Path path) throws Exception {
+        try (BufferedWriter w = Files.newBufferedWriter(path)) {
+            w.write("storeId,startDate,endDate,rank,sku,count,maxError\n");
+            for (int s = 0; s < periods.size(); s++) {
+                for (Period period : periods.get(s)) {
+                    String from = startDate.plusDays(period.fromDay()).toString();
+                    String to = startDate.plusDays(period.toDay()).toString();
+                    int rank = 1;
+                    for (TopKTracker.Entry e : period.entries()) {
+                        w.write((s + 1) + ","
+                                + from + ","
+                                + to + ","
+                                + rank++ + ","
+                                + columns.sku(e.skuIndex()) + ","
+                                + e.count() + ","
+                                + e.maxError() + "\n");
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,24 +1,36 @@
 package stats;
 
-import java.io.BufferedReader;
+import config.SimulationConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.*;
+import java.util.Arrays;
 
+/**
+ * Loads the customer summary into SQLite. Rows go through one prepared
+ * statement inside explicit transactions committed every
+ * {@link SimulationConfig#SQLITE_COMMIT_ROWS} rows, with journaling and syncing
+ * relaxed for the bulk load; the index is built once the table is full.
+ */
 public final class ToSQLite {
 
     private ToSQLite() {}
 
     public static void export(Path csvPath, Path dbPath) throws Exception {
-
-        String url = "jdbc:sqlite:" + dbPath.toAbsolutePath();
-
-        try (Connection conn = DriverManager.getConnection(url)) {
-            createTable(conn);
-            loadCsv(conn, csvPath);
+        try (BulkLoader loader = open(dbPath)) {
+            loadCsv(loader, csvPath);
         }
     }
 
+    /** Opens a loader on a fresh customer_summary table, for feeding rows directly. */
+    public static BulkLoader open(Path dbPath) throws SQLException {
+        return new BulkLoader(dbPath, SimulationConfig.SQLITE_COMMIT_ROWS);
+    }
+
     private static void createTable(Connection conn) throws SQLException {
         String ddl = """
             DROP TABLE IF EXISTS customer_summary;
@@ -39,30 +51,174 @@ public final class ToSQLite {
             st.executeUpdate(ddl);
         }
     }
-    private static void loadCsv(Connection conn, Path csvPath) throws Exception {
-        String insert = """
-            INSERT INTO customer_summary
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-            """;
-        try (PreparedStatement ps = conn.prepareStatement(insert);
-             BufferedReader br = Files.newBufferedReader(csvPath)) {
-
-            br.readLine();
 
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] t = line.split(",");
+    private static void createIndexes(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("""
+                CREATE INDEX customer_summary_date_store
+                ON customer_summary (date, storeId, customerId)
+                """);
+        }
+    }
 
-                ps.setString(1, t[0]);
-                ps.setInt(2, Integer.parseInt(t[1]));
-                ps.setInt(3, Integer.parseInt(t[2]));
+    static void applyPragmas(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("PRAGMA journal_mode = " + SimulationConfig.SQLITE_JOURNAL_MODE);
+            st.execute("PRAGMA synchronous = " + SimulationConfig.SQLITE_SYNCHRONOUS);
+            st.execute("PRAGMA temp_store = MEMORY");
+            st.execute("PRAGMA cache_size = -65536");
+        }
+    }
 
-                for (int i = 3; i < t.length; i++) {
-                    ps.setInt(i + 1, Integer.parseInt(t[i]));
+    /**
+     * Reads the CSV byte by byte: the date is the only text column (reused while
+     * it repeats) and the remaining columns are parsed as unsigned ints in place.
+     */
+    private static void loadCsv(BulkLoader loader, Path csvPath) throws IOException, SQLException {
+        try (InputStream in = Files.newInputStream(csvPath)) {
+            CsvCursor csv = new CsvCursor(in);
+            csv.skipLine();
+            while (csv.hasMore()) {
+                String date = csv.nextDate();
+                int storeId = csv.nextInt();
+                int customerId = csv.nextInt();
+                int flags = 0;
+                for (int bit = 0; bit < 7; bit++) {
+                    if (csv.nextInt() != 0) flags |= 1 << bit;
                 }
-                ps.addBatch();
+                loader.add(date, storeId, customerId, flags);
+            }
+        }
+    }
+
+    /**
+     * Inserts customer summary rows, committing every {@code commitRows} rows.
+     * The flag bits follow {@link CustomerSummaryCollector#MILK} through
+     * {@link CustomerSummaryCollector#JAM}.
+     */
+    public static final class BulkLoader implements AutoCloseable {
+
+        private final Connection conn;
+        private final PreparedStatement insert;
+        private final int commitRows;
+        private int pending;
+
+        private BulkLoader(Path dbPath, int commitRows) throws SQLException {
+            this.commitRows = commitRows;
+            this.conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath.toAbsolutePath());
+            try {
+                applyPragmas(conn);
+                createTable(conn);
+                conn.setAutoCommit(false);
+                this.insert = conn.prepareStatement("""
+                    INSERT INTO customer_summary
+                    VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                    """);
+            } catch (SQLException e) {
+                conn.close();
+                throw e;
+            }
+        }
+
+        public void add(String date, int storeId, int customerId, int flags) throws SQLException {
+            insert.setString(1, date);
+            insert.setInt(2, storeId);
+            insert.setInt(3, customerId);
+            for (int bit = 0; bit < 7; bit++) {
+                insert.setInt(4 + bit, (flags >> bit) & 1);
+            }
+            insert.addBatch();
+            if (++pending == commitRows) {
+                commit();
+            }
+        }
+
+        private void commit() throws SQLException {
+            insert.executeBatch();
+            conn.commit();
+            pending = 0;
+        }
+
+        /** Commits the last rows, builds the index and closes the connection. */
+        @Override
+        public void close() throws SQLException {
+            try (conn; insert) {
+                commit();
+                createIndexes(conn);
+                conn.commit();
+            }
+        }
+    }
+
+    private static final class CsvCursor {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 20];
+        private int position;
+        private int limit;
+
+        private final byte[] field = new byte[32];
+        private byte[] lastDate = new byte[0];
+        private String lastDateString;
+
+        CsvCursor(InputStream in) {
+            this.in = in;
+        }
+
+        boolean hasMore() throws IOException {
+            while (true) {
+                if (position == limit && !fill()) return false;
+                byte b = buffer[position];
+                if (b != '\n' && b != '\r') return true;
+                position++;
+            }
+        }
+
+        void skipLine() throws IOException {
+            int b;
+            while ((b = next()) != -1 && b != '\n') {
+                // skip
+            }
+        }
+
+        String nextDate() throws IOException {
+            int length = 0;
+            int b;
+            while ((b = next()) != -1 && b != ',') {
+                if (length == field.length) throw new IOException("Date field too long");
+                field[length++] = (byte) b;
+            }
+            if (!Arrays.equals(field, 0, length, lastDate, 0, lastDate.length)) {
+                lastDate = Arrays.copyOf(field, length);
+                lastDateString = new String(lastDate, StandardCharsets.US_ASCII);
+            }
+            return lastDateString;
+        }
+
+        int nextInt() throws IOException {
+            int value = 0;
+            int b;
+            while ((b = next()) != -1 && b != ',' && b != '\n') {
+                if (b == '\r') continue;
+                if (b < '0' || b > '9') throw new IOException("Not a number: '" + (char) b + "'");
+                value = value * 10 + (b - '0');
+            }
+            return value;
+        }
+
+        private int next() throws IOException {
+            if (position == limit && !fill()) return -1;
+            return buffer[position++];
+        }
+
+        private boolean fill() throws IOException {
+            limit = in.read(buffer);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return false;
             }
-            ps.executeBatch();
+            return true;
         }
     }
 }
@@ -1,17 +1,40 @@
 package stats;
 
+import config.SimulationConfig;
 import model.Product;
 import model.ProductCatalog;
 
 import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
-
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Daily sales series of a set of SKUs for the D3 page. Each series is one
+ * compact JSON line with its values as a single array; the series are read
+ * from the aggregator's day x SKU store in one pass, so top-100 or the whole
+ * catalog costs the same per cell as the top 10.
+ * <p>
+ * Optionally writes {@code <file>.gz} and a {@code .bin} sidecar of
+ * little-endian Int32s that a browser can view as one {@code Int32Array}:
+ * magic, version, day count, series count, then the epoch day of every date,
+ * the SKU of every series, and the series values back to back.
+ */
 public final class Top10DailyExporter {
 
+    public static final int BINARY_MAGIC = 0x54445331; // "TDS1"
+    public static final int BINARY_VERSION = 1;
+
     private Top10DailyExporter() {}
 
     public static void export(
@@ -19,56 +42,101 @@ public final class Top10DailyExporter {
             ProductCatalog catalog,
             Path outputPath
     ) throws Exception {
-
-        List<Integer> top10Skus = aggregator.getTop10()
+        int[] skus = aggregator.getTopK(SimulationConfig.TOP_K)
                 .stream()
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+                .mapToInt(Map.Entry::getKey)
+                .toArray();
+        export(aggregator, catalog, skus, outputPath,
+                SimulationConfig.TOP_DAILY_GZIP, SimulationConfig.TOP_DAILY_BINARY);
+    }
 
-        List<LocalDate> dates = aggregator.dailySkuCounts()
-                .keySet()
-                .stream()
-                .sorted()
-                .toList();
+    /** Writes the series of {@code skus}, ranked in the given order. */
+    public static void export(
+            Aggregator aggregator,
+            ProductCatalog catalog,
+            int[] skus,
+            Path outputPath,
+            boolean gzip,
+            boolean binary
+    ) throws Exception {
+        List<LocalDate> dates = aggregator.dates();
+        long[][] series = aggregator.dailySeries(skus);
 
         try (BufferedWriter w = Files.newBufferedWriter(outputPath)) {
-            w.write("{\n");
-            w.write("  \"dates\": [\n");
-
-            for (int i = 0; i < dates.size(); i++) {
-                if (i > 0) w.write(",\n");
-                w.write("    \"" + dates.get(i) + "\"");
+            writeJson(w, catalog, dates, skus, series);
+        }
+        if (gzip) {
+            Path gzPath = outputPath.resolveSibling(outputPath.getFileName() + ".gz");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzPath), 1 << 16);
+                 BufferedWriter w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                writeJson(w, catalog, dates, skus, series);
             }
+        }
+        if (binary) {
+            writeBinary(sidecarPath(outputPath), dates, skus, series);
+        }
+    }
 
-            w.write("\n  ],\n");
-            w.write("  \"series\": [\n");
-
-            for (int i = 0; i < top10Skus.size(); i++) {
-                int sku = top10Skus.get(i);
-                Product p = catalog.productsBySku().get(sku);
-
-                if (i > 0) w.write(",\n");
-
-                w.write("    {\n");
-                w.write("      \"rank\": " + (i + 1) + ",\n");
-                w.write("      \"sku\": " + sku + ",\n");
-                w.write("      \"name\": \"" + escape(p != null ? p.name() : "UNKNOWN") + "\",\n");
-                w.write("      \"values\": [\n");
-
-                for (int j = 0; j < dates.size(); j++) {
-                    if (j > 0) w.write(",\n");
-                    long c = aggregator.dailySkuCounts()
-                            .getOrDefault(dates.get(j), Map.of())
-                            .getOrDefault(sku, 0L);
-                    w.write("        " + c);
-                }
+    private static Path sidecarPath(Path jsonPath) {
+        String name = jsonPath.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return jsonPath.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".bin");
+    }
 
-                w.write("\n      ]\n");
-                w.write("    }");
+    private static void writeJson(
+            BufferedWriter w,
+            ProductCatalog catalog,
+            List<LocalDate> dates,
+            int[] skus,
+            long[][] series
+    ) throws IOException {
+        StringBuilder line = new StringBuilder(16 * dates.size());
+        line.append("{\n  \"dates\": [");
+        for (int i = 0; i < dates.size(); i++) {
+            if (i > 0) line.append(',');
+            line.append('"').append(dates.get(i)).append('"');
+        }
+        line.append("],\n  \"series\": [\n");
+        w.append(line);
+
+        for (int i = 0; i < skus.length; i++) {
+            Product p = catalog.productsBySku().get(skus[i]);
+            line.setLength(0);
+            line.append("    {\"rank\": ").append(i + 1)
+                    .append(", \"sku\": ").append(skus[i])
+                    .append(", \"name\": \"").append(escape(p != null ? p.name() : "UNKNOWN"))
+                    .append("\", \"values\": [");
+            long[] values = series[i];
+            for (int j = 0; j < values.length; j++) {
+                if (j > 0) line.append(',');
+                line.append(values[j]);
             }
+            line.append(i < skus.length - 1 ? "]},\n" : "]}\n");
+            w.append(line);
+        }
+        w.write("  ]\n}\n");
+    }
 
-            w.write("\n  ]\n");
-            w.write("}\n");
+    private static void writeBinary(
+            Path path,
+            List<LocalDate> dates,
+            int[] skus,
+            long[][] series
+    ) throws IOException {
+        int ints = 4 + dates.size() + skus.length + skus.length * dates.size();
+        ByteBuffer buf = ByteBuffer.allocate(ints * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(BINARY_MAGIC).putInt(BINARY_VERSION).putInt(dates.size()).putInt(skus.length);
+        for (LocalDate date : dates) buf.putInt((int) date.toEpochDay());
+        for (int sku : skus) buf.putInt(sku);
+        for (long[] values : series) {
+            for (long v : values) buf.putInt(Math.toIntExact(v));
+        }
+        buf.flip();
+        try (FileChannel ch = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) ch.write(buf);
         }
     }
 
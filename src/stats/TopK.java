@@ -0,0 +1,101 @@
+package stats;
+
+/**
+ * Top-K selection over primitive counts with a bounded min-heap, in
+ * O(n log k) time and O(k) space. Results are ordered by count, largest
+ * first; equal counts keep the lower index first, which is SKU order for the
+ * catalog's dense indices. Zero counts are never selected.
+ */
+public final class TopK {
+
+    private TopK() {}
+
+    /** Indices of the {@code k} largest of {@code counts[offset..offset+length)}, relative to offset. */
+    public static int[] largest(long[] counts, int offset, int length, int k) {
+        Heap heap = new Heap(counts, offset, k);
+        for (int i = 0; i < length; i++) {
+            heap.offer(i);
+        }
+        return heap.drain();
+    }
+
+    public static int[] largest(long[] counts, int k) {
+        return largest(counts, 0, counts.length, k);
+    }
+
+    /** Same as {@link #largest(long[], int)}, considering only {@code candidates[0..n)}. */
+    public static int[] largest(long[] counts, int[] candidates, int n, int k) {
+        Heap heap = new Heap(counts, 0, k);
+        for (int j = 0; j < n; j++) {
+            heap.offer(candidates[j]);
+        }
+        return heap.drain();
+    }
+
+    private static final class Heap {
+
+        private final long[] counts;
+        private final int offset;
+        // Min-heap of the best k so far: the root is the one to evict next.
+        private final int[] heap;
+        private int size;
+
+        Heap(long[] counts, int offset, int k) {
+            this.counts = counts;
+            this.offset = offset;
+            this.heap = new int[Math.max(0, k)];
+        }
+
+        void offer(int i) {
+            if (counts[offset + i] <= 0 || heap.length == 0) return;
+            if (size < heap.length) {
+                heap[size] = i;
+                siftUp(size++);
+            } else if (better(i, heap[0])) {
+                heap[0] = i;
+                siftDown(0);
+            }
+        }
+
+        int[] drain() {
+            int[] result = new int[size];
+            for (int r = size - 1; r >= 0; r--) {
+                result[r] = heap[0];
+                heap[0] = heap[--size];
+                siftDown(0);
+            }
+            return result;
+        }
+
+        private boolean better(int a, int b) {
+            long ca = counts[offset + a];
+            long cb = counts[offset + b];
+            return ca > cb || (ca == cb && a < b);
+        }
+
+        private void siftUp(int pos) {
+            int item = heap[pos];
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (!better(heap[parent], item)) break;
+                heap[pos] = heap[parent];
+                pos = parent;
+            }
+            heap[pos] = item;
+        }
+
+        private void siftDown(int pos) {
+            if (size == 0) return;
+            int item = heap[pos];
+            int half = size >>> 1;
+            while (pos < half) {
+                int child = 2 * pos + 1;
+                if (child + 1 < size && better(heap[child], heap[child + 1])) child++;
+                if (!better(item, heap[child])) break;
+                heap[pos] = heap[child];
+                pos = child;
+            }
+            heap[pos] = item;
+        }
+    }
+}
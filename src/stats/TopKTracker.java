@@ -0,0 +1,29 @@
+package stats;
+
+import java.util.List;
+
+/**
+ * Running top-K of SKU sales over a period. Fed one sale at a time by a single
+ * store thread; {@link #top} reads the period and {@link #reset} starts the
+ * next one.
+ */
+public interface TopKTracker {
+
+    /**
+     * One ranked SKU. {@code count} may overestimate the true count by at most
+     * {@code maxError}, which is always 0 for an exact tracker.
+     */
+    record Entry(int skuIndex, long count, long maxError) {}
+
+    void add(int skuIndex);
+
+    /** Up to {@code k} SKUs, largest count first, ties in SKU order. */
+    List<Entry> top(int k);
+
+    void reset();
+
+    /** Space-Saving tracker of {@code capacity} counters when approximate, else exact. */
+    static TopKTracker create(int skuCount, boolean approximate, int capacity) {
+        return approximate ? new SpaceSavingTopK(capacity) : new ExactTopK(skuCount);
+    }
+}
@@ -0,0 +1,96 @@
+package stats;
+
+import java.time.LocalDate;
+
+/**
+ * Prefix sums over the days that recorded sales, in date order. A window is a
+ * half-open range {@code [from, to)} of positions in that sequence, so "the
+ * first N days" is {@code [0, leading(N))} and a rolling window of N days
+ * ending at position p is {@code [p - N + 1, p + 1)}. Item and customer
+ * totals of any window take O(1), per-SKU totals O(SKUs).
+ * <p>
+ * The index is a snapshot: build it with {@link Aggregator#windows()} once the
+ * aggregator is complete.
+ */
+public final class WindowIndex {
+
+    private final LocalDate startDate;
+    private final int skuCount;
+    // Day index (days since startDate) of each position.
+    private final int[] days;
+    // Sums over the first k positions at [k] (items, customers) and
+    // [k * skuCount + skuIndex] (per-SKU counts).
+    private final long[] itemsPrefix;
+    private final long[] customersPrefix;
+    private final long[] skuPrefix;
+
+    WindowIndex(
+            LocalDate startDate,
+            int skuCount,
+            int[] dailyCustomers,
+            long[] dailyItems,
+            long[] dailySkuCounts
+    ) {
+        this.startDate = startDate;
+        this.skuCount = skuCount;
+
+        int active = 0;
+        for (long items : dailyItems) {
+            if (items > 0) active++;
+        }
+        this.days = new int[active];
+        this.itemsPrefix = new long[active + 1];
+        this.customersPrefix = new long[active + 1];
+        this.skuPrefix = new long[(active + 1) * skuCount];
+
+        int k = 0;
+        for (int d = 0; d < dailyItems.length; d++) {
+            if (dailyItems[d] == 0) continue;
+            days[k] = d;
+            itemsPrefix[k + 1] = itemsPrefix[k] + dailyItems[d];
+            customersPrefix[k + 1] = customersPrefix[k] + dailyCustomers[d];
+            int prev = k * skuCount;
+            int next = prev + skuCount;
+            int source = d * skuCount;
+            for (int i = 0; i < skuCount; i++) {
+                skuPrefix[next + i] = skuPrefix[prev + i] + dailySkuCounts[source + i];
+            }
+            k++;
+        }
+    }
+
+    /** Number of days that recorded sales. */
+    public int size() {
+        return days.length;
+    }
+
+    public LocalDate date(int position) {
+        return startDate.plusDays(days[position]);
+    }
+
+    /** End position of the window holding the first {@code windowDays} days. */
+    public int leading(int windowDays) {
+        return Math.min(windowDays, days.length);
+    }
+
+    public long items(int from, int to) {
+        return itemsPrefix[to] - itemsPrefix[from];
+    }
+
+    public long customers(int from, int to) {
+        return customersPrefix[to] - customersPrefix[from];
+    }
+
+    public long skuTotal(int skuIndex, int from, int to) {
+        return skuPrefix[to * skuCount + skuIndex] - skuPrefix[from * skuCount + skuIndex];
+    }
+
+    /** Writes the window total of every SKU, by dense index, into {@code out}. */
+    public void skuTotals(int from, int to, long[] out) {
+        int a = from * skuCount;
+        int b = to * skuCount;
+        for (int i = 0; i < skuCount; i++) {
+            out[i] = skuPrefix[b + i] - skuPrefix[a + i];
+        }
+    }
+}